@@ -7,6 +7,21 @@ import { Client } from "@stomp/stompjs";
 import { supabase } from "./supabaseClient";
 import Navbar from "./components/Navbar";
 
+// résultats demandés au serveur à chaque lot
+const PAGE_SIZE = 100;
+
+// Une trame peut contenir un résultat (single), un tableau (batch) ou un lot compact
+// { files: [{ id, filename, url }], hits: [[fichier, page, paragraphe, ligne, contenu]] }
+function decodeResults(data, files) {
+  if (Array.isArray(data)) return data;
+  if (!data.hits) return [data];
+  for (const f of data.files) files.set(f.id, f);
+  return data.hits.map(([id, page, paragraph, line, lineContent]) => {
+    const f = files.get(id);
+    return { filename: f.filename, page, paragraph, line, lineContent, url: `${f.url}#page=${page}` };
+  });
+}
+
 export default function App() {
   const [session, setSession] = useState(null);
   useEffect(() => {
@@ -27,6 +42,7 @@ export default function App() {
   const [searchQuery, setSearchQuery] = useState("");
   const [hits, setHits] = useState([]);
   const [loading, setLoading] = useState(false);
+  const [hasMore, setHasMore] = useState(false);
   const [error, setError] = useState("");
   const [selectedUrl, setSelectedUrl] = useState("");
   const [elapsedTime, setElapsedTime] = useState(null);
@@ -35,6 +51,7 @@ export default function App() {
   const startedAt = useRef(null);       
   const firstResultMs = useRef(null);    
   const resultsCountRef = useRef(0);     
+  const filesRef = useRef(new Map());    // fichiers décrits par les trames compactes de la recherche en cours
 
   useEffect(() => {
     if (!user) return;
@@ -49,8 +66,16 @@ export default function App() {
       console.log("STOMP connecté");
       client.subscribe(`/queue/results-${sessionId}`, async (message) => {
         try {
+          // lot demandé envoyé, d'autres résultats attendent une nouvelle demande
+          if (message.body === "HAS_MORE") {
+            setLoading(false);
+            setHasMore(true);
+            return;
+          }
+
           if (message.body === "COMPLETED") {
             setLoading(false);
+            setHasMore(false);
             const ms_total = startedAt.current ? performance.now() - startedAt.current : null;
 
             if (user && searchQuery.trim()) {
@@ -80,6 +105,7 @@ export default function App() {
             const errMsg = message.body.slice("ERROR: ".length);
             setError(errMsg);
             setLoading(false);
+            setHasMore(false);
             const ms_total = startedAt.current ? performance.now() - startedAt.current : null;
 
             if (user && searchQuery.trim()) {
@@ -106,7 +132,7 @@ export default function App() {
             return;
           }
 
-          const data = JSON.parse(message.body);
+          const batch = decodeResults(JSON.parse(message.body), filesRef.current);
 
           if (firstResultMs.current == null && startedAt.current) {
             const elapsed = performance.now() - startedAt.current;
@@ -114,8 +140,8 @@ export default function App() {
             setElapsedTime(elapsed.toFixed(2));
           }
 
-          resultsCountRef.current += 1;
-          setHits((prev) => [...prev, data]);
+          resultsCountRef.current += batch.length;
+          setHits((prev) => [...prev, ...batch]);
         } catch (e) {
           console.error("Erreur parsing message:", e, message.body);
         }
@@ -149,7 +175,9 @@ export default function App() {
     setSelectedUrl("");
     setError("");
     setElapsedTime(null);
+    setHasMore(false);
     resultsCountRef.current = 0;
+    filesRef.current = new Map();
     firstResultMs.current = null;
     startedAt.current = performance.now();
     setLoading(true);
@@ -157,7 +185,7 @@ export default function App() {
     if (stompClient.current?.connected) {
       stompClient.current.publish({
         destination: "/app/startSearch",
-        body: JSON.stringify({ query: qTrim, sessionId, user: pseudo }),
+        body: JSON.stringify({ query: qTrim, sessionId, user: pseudo, limit: PAGE_SIZE, format: "compact" }),
       });
     } else {
       setError("Impossible de se connecter au serveur WebSocket");
@@ -165,6 +193,16 @@ export default function App() {
     }
   };
 
+  const loadMore = () => {
+    if (!stompClient.current?.connected) return;
+    setHasMore(false);
+    setLoading(true);
+    stompClient.current.publish({
+      destination: "/app/moreResults",
+      body: JSON.stringify({ sessionId, limit: PAGE_SIZE }),
+    });
+  };
+
   const handleKeyDown = (e) => {
     if (e.key === "Enter") {
       e.preventDefault();
@@ -263,6 +301,11 @@ export default function App() {
               query={searchQuery}
               onSelectUrl={(url) => setSelectedUrl(url)}
             />
+            {hasMore && (
+              <button onClick={loadMore} style={{ marginTop: 8 }}>
+                Plus de résultats
+              </button>
+            )}
           </div>
 
           <PdfJsViewer src={selectedUrl} query={searchQuery} />
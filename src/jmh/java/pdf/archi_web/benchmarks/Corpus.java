@@ -0,0 +1,148 @@
+package pdf.archi_web.benchmarks;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import pdf.archi_web.PdfAnalyzer;
+import pdf.archi_web.IndexShards;
+import pdf.archi_web.PageTextStore;
+import pdf.archi_web.PdfIndexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Corpus des benchmarks : les PDF livrés avec l'application (static/pdf) et un corpus synthétique
+ * plus gros, généré une fois (graine fixe) dans target/bench-corpus puis réutilisé.
+ */
+final class Corpus {
+
+    static final Path BUNDLED = Path.of("src/main/resources/static/pdf");
+    static final Path SYNTHETIC = Path.of("target/bench-corpus");
+
+    // Vocabulaire du corpus synthétique : recoupe les requêtes des benchmarks (termes, phrase)
+    private static final String[] WORDS = {
+            "guerre", "indépendance", "argentine", "gouvernement", "armée", "province", "révolution", "traité",
+            "nadal", "tennis", "tournoi", "joueur", "finale", "victoire", "saison", "classement", "surface",
+            "réchauffement climatique", "climat", "température", "émissions", "océan", "glace", "énergie",
+            "le", "la", "les", "des", "une", "dans", "pour", "avec", "sur", "par", "entre", "après", "avant",
+            "histoire", "politique", "économie", "société", "population", "territoire", "siècle", "année",
+            "première", "grande", "nouvelle", "rapport", "selon", "également", "plusieurs", "période"
+    };
+    private static final int LINES_PER_PAGE = 50;
+    private static final int WORDS_PER_LINE = 11;
+
+    private Corpus() {
+    }
+
+    static List<Path> bundled() throws IOException {
+        try (Stream<Path> files = Files.list(BUNDLED)) {
+            return files.filter(p -> p.toString().endsWith(".pdf")).sorted().toList();
+        }
+    }
+
+    /**
+     * {@code files} PDF de {@code pages} pages de texte (paragraphes de quelques lignes), générés au premier appel.
+     */
+    static List<Path> synthetic(int files, int pages) throws IOException {
+        Path dir = SYNTHETIC.resolve(files + "x" + pages);
+        Files.createDirectories(dir);
+        Random random = new Random(42);
+        List<Path> pdfs = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            Path pdf = dir.resolve("synthetique-" + f + ".pdf");
+            if (!Files.exists(pdf)) writePdf(pdf, pages, random);
+            pdfs.add(pdf);
+        }
+        return pdfs;
+    }
+
+    private static void writePdf(Path pdf, int pages, Random random) throws IOException {
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 9);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 760);
+                    for (int l = 0; l < LINES_PER_PAGE; l++) {
+                        // ligne vide toutes les 4 à 8 lignes : nouveau paragraphe
+                        if (l > 0 && random.nextInt(6) == 0) {
+                            content.newLine();
+                            continue;
+                        }
+                        StringBuilder line = new StringBuilder();
+                        for (int w = 0; w < WORDS_PER_LINE; w++) {
+                            if (w > 0) line.append(' ');
+                            line.append(WORDS[random.nextInt(WORDS.length)]);
+                        }
+                        content.showText(line.toString());
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(pdf.toFile());
+        }
+    }
+
+    /** Nouvel index en mémoire, configuré comme celui de l'application. */
+    static IndexWriter newWriter(Directory directory) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(new PdfAnalyzer());
+        config.setRAMBufferSizeMB(64);
+        return new IndexWriter(directory, config);
+    }
+
+    /** Index en mémoire (commité) des PDF donnés, en shards, avec le texte de leurs pages. */
+    record Index(Directory[] shards, PageTextStore texts) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            texts.close();
+            for (Directory shard : shards) shard.close();
+        }
+    }
+
+    static Index index(List<Path> pdfs) throws IOException {
+        return index(pdfs, 1);
+    }
+
+    /** Chaque PDF va dans le shard désigné par son nom, comme dans l'application. */
+    static Index index(List<Path> pdfs, int shards) throws IOException {
+        Directory[] directories = new Directory[shards];
+        PageTextStore texts = textStore();
+        for (int i = 0; i < shards; i++) {
+            directories[i] = new ByteBuffersDirectory();
+            try (IndexWriter writer = newWriter(directories[i])) {
+                PdfIndexer indexer = new PdfIndexer(writer, texts);
+                for (Path pdf : pdfs) {
+                    if (IndexShards.shardOf(pdf.getFileName().toString(), shards) == i) indexer.indexPdf(pdf.toString());
+                }
+            }
+        }
+        return new Index(directories, texts);
+    }
+
+    /** Store de texte des pages dans un dossier temporaire, supprimé à la sortie de la JVM. */
+    static PageTextStore textStore() throws IOException {
+        Path dir = Files.createTempDirectory("bench-pagetext");
+        dir.toFile().deleteOnExit();
+        PageTextStore texts = new PageTextStore(dir, 0);
+        dir.resolve("pagetext-0.dat").toFile().deleteOnExit();
+        return texts;
+    }
+}
@@ -0,0 +1,76 @@
+package pdf.archi_web.benchmarks;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pdf.archi_web.PageTextStore;
+import pdf.archi_web.PdfIndexer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexation séquentielle ({@link PdfIndexer#indexPdf}) d'un corpus complet dans un index en mémoire :
+ * extraction PDFBox + construction des tables de lignes + analyse Lucene, sans bruit disque.
+ * Une opération = tout le corpus ; le résultat (pages) permet de ramener le temps à la page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class IndexingBenchmark {
+
+    /** bundled : les PDF de static/pdf ; synthetic : 8 PDF de 200 pages générés. */
+    @Param({"bundled", "synthetic"})
+    public String corpus;
+
+    private List<Path> pdfs;
+    private Directory directory;
+    private PageTextStore texts;
+    private IndexWriter writer;
+    private PdfIndexer indexer;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() throws IOException {
+        pdfs = "synthetic".equals(corpus) ? Corpus.synthetic(8, 200) : Corpus.bundled();
+    }
+
+    @Setup(Level.Iteration)
+    public void openIndex() throws IOException {
+        directory = new ByteBuffersDirectory();
+        texts = Corpus.textStore();
+        writer = Corpus.newWriter(directory);
+        indexer = new PdfIndexer(writer, texts);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeIndex() throws IOException {
+        writer.close();
+        texts.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public int indexPdf() throws IOException {
+        int pages = 0;
+        for (Path pdf : pdfs) pages += indexer.indexPdf(pdf.toString());
+        return pages;
+    }
+}
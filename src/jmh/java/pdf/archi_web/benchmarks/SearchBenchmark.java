@@ -0,0 +1,109 @@
+package pdf.archi_web.benchmarks;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pdf.archi_web.PdfAnalyzer;
+import pdf.archi_web.PdfSearcher;
+import pdf.archi_web.SearchCursor;
+import pdf.archi_web.ShardedSearcherManager;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latence de recherche sur les PDF livrés + un corpus synthétique (index en mémoire, déjà commité),
+ * en un seul shard ou réparti sur plusieurs shards interrogés en parallèle.
+ * <ul>
+ *     <li>{@code search} : parcours complet, analyse de la requête comprise ({@link PdfSearcher#search(String, PdfSearcher.SearchResultCallback)})</li>
+ *     <li>{@code firstPage} : première demande du client (100 résultats, chemin du WebSocket)</li>
+ *     <li>{@code extractLines} : seule la boucle par page trouvée (Matches -> paragraphe/ligne), sans recherche Lucene</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SearchBenchmark {
+
+    /** Terme seul, plusieurs termes (OU), phrase. */
+    @Param({"guerre", "guerre argentine indépendance", "\"réchauffement climatique\""})
+    public String query;
+
+    /** Shards de l'index ; au-delà de 1, une requête est répartie sur un thread par cœur. */
+    @Param({"1", "4"})
+    public int shards;
+
+    private Corpus.Index index;
+    private ExecutorService executor;
+    private ShardedSearcherManager searcherManager;
+    private PdfSearcher pdfSearcher;
+    private IndexSearcher searcher;
+    private Query parsed;
+    private Weight weight;
+    private ScoreDoc[] hits;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<Path> pdfs = new ArrayList<>(Corpus.bundled());
+        pdfs.addAll(Corpus.synthetic(8, 200));
+        index = Corpus.index(pdfs, shards);
+        int cores = Runtime.getRuntime().availableProcessors();
+        executor = shards > 1 && cores > 1 ? Executors.newFixedThreadPool(cores) : null;
+        searcherManager = new ShardedSearcherManager(index.shards(), executor);
+        pdfSearcher = new PdfSearcher(searcherManager, new PdfAnalyzer(), index.texts());
+
+        searcher = searcherManager.acquire();
+        parsed = pdfSearcher.parse(query);
+        weight = searcher.createWeight(searcher.rewrite(parsed), ScoreMode.COMPLETE_NO_SCORES, 1f);
+        hits = searcher.search(parsed, Integer.MAX_VALUE).scoreDocs;
+        if (hits.length == 0) throw new IllegalStateException("aucun résultat pour " + query);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        searcherManager.release(searcher);
+        searcherManager.close();
+        if (executor != null) executor.shutdownNow();
+        index.close();
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) throws Exception {
+        pdfSearcher.search(query, bh::consume);
+    }
+
+    @Benchmark
+    public int firstPage(Blackhole bh) throws Exception {
+        return new SearchCursor(pdfSearcher, parsed).next(searcher, 100, bh::consume);
+    }
+
+    @Benchmark
+    public int extractLines(Blackhole bh) throws Exception {
+        int lines = 0;
+        for (ScoreDoc sd : hits) lines += pdfSearcher.emitLines(searcher, weight, sd, bh::consume);
+        return lines;
+    }
+}
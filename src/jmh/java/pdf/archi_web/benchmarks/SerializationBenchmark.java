@@ -0,0 +1,70 @@
+package pdf.archi_web.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import pdf.archi_web.DTO.SearchResult;
+import pdf.archi_web.PdfAnalyzer;
+import pdf.archi_web.PdfSearcher;
+import pdf.archi_web.ShardedSearcherManager;
+import pdf.archi_web.services.ResultBatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation JSON des résultats telle que faite pour le WebSocket ({@link ResultBatcher}, un format par paramètre),
+ * sur les résultats réels d'une requête large. Le canal de sortie ne fait rien : seul le coût
+ * de construction des trames est mesuré. Une opération = toute la requête.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"single", "batch", "compact"})
+    public String format;
+
+    private final List<SearchResult> results = new ArrayList<>();
+    private ObjectMapper mapper;
+    private SimpMessagingTemplate template;
+    private ResultBatcher.Format frameFormat;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        try (Corpus.Index index = Corpus.index(Corpus.bundled());
+             ShardedSearcherManager searcherManager = new ShardedSearcherManager(index.shards(), null)) {
+            new PdfSearcher(searcherManager, new PdfAnalyzer(), index.texts()).search("nadal OR guerre", results::add);
+        }
+        // même configuration Jackson que le contexte Spring
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        template = new SimpMessagingTemplate((message, timeout) -> true);
+        frameFormat = ResultBatcher.Format.parse(format, ResultBatcher.Format.SINGLE);
+    }
+
+    @Benchmark
+    public long frames() {
+        ResultBatcher batcher = new ResultBatcher(template, mapper, "/queue/results-bench", frameFormat,
+                64, Long.MAX_VALUE / 1_000_000L, new HashMap<>());
+        for (SearchResult r : results) batcher.onResult(r);
+        batcher.flush();
+        return batcher.bytes();
+    }
+}
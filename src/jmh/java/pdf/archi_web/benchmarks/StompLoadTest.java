@@ -0,0 +1,325 @@
+package pdf.archi_web.benchmarks;
+
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import pdf.archi_web.ArchiWebApplication;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test de charge de bout en bout du WebSocket de recherche : /ws + /app/startSearch + StreamingService.
+ * <p>
+ * Démarre l'application en local (index, historique et journal dans target/load-test), ouvre N sessions STOMP
+ * et rejoue un mélange de requêtes tirées de recherches.log. Chaque session enchaîne ses recherches
+ * (demande, suite sur "HAS_MORE", jusqu'à "COMPLETED"). Rapport : p50/p95/p99 du temps jusqu'au premier
+ * résultat et jusqu'à "COMPLETED", débit et taux d'erreur.
+ * <p>
+ * mvn -Pbenchmarks test-compile exec:exec@load -Dload.args="--load.sessions=200 --search.max-concurrent=32"
+ * <p>
+ * Options (--clé=valeur) : load.sessions (100), load.searches par session (5), load.limit (100),
+ * load.format (compact), load.max-pages par recherche (0 : jusqu'au bout), load.timeout-s (30),
+ * load.queries (recherches.log), load.ramp-ms (2000), load.url (ws://.../ws : cible déjà démarrée).
+ * Les autres options sont passées à l'application (ex. --search.max-concurrent=32).
+ */
+public class StompLoadTest {
+
+    // Début d'un enregistrement de recherches.log : "2025-09-09T13:33:17.595 | 'guerre' -> [...]"
+    private static final Pattern RECORD_START = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}T\\S+ \\| '(.*?)' -> ");
+    private static final List<String> DEFAULT_QUERIES = List.of("guerre", "nadal", "climat", "tennis", "argentine",
+            "\"réchauffement climatique\"", "guerre AND argentine");
+
+    private final Map<String, String> options;
+    private final int sessions;
+    private final int searchesPerSession;
+    private final int limit;
+    private final String format;
+    private final int maxPages;
+    private final long timeoutNanos;
+    private final long rampMillis;
+
+    // Mesures (ns) et compteurs, alimentés par toutes les sessions
+    private final ConcurrentLinkedQueue<Long> firstResult = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<String, AtomicInteger> errorKinds = new ConcurrentHashMap<>();
+
+    StompLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.sessions = intOption("load.sessions", 100);
+        this.searchesPerSession = intOption("load.searches", 5);
+        this.limit = intOption("load.limit", 100);
+        this.format = options.getOrDefault("load.format", "compact");
+        this.maxPages = intOption("load.max-pages", 0);
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(intOption("load.timeout-s", 30));
+        this.rampMillis = intOption("load.ramp-ms", 2000);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) continue;
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        StompLoadTest test = new StompLoadTest(options);
+
+        ConfigurableApplicationContext app = null;
+        String url = options.get("load.url");
+        if (url == null) {
+            app = startApplication(args, options);
+            String port = app.getEnvironment().getProperty("local.server.port");
+            awaitIndexReady("http://localhost:" + port);
+            url = "ws://localhost:" + port + "/ws";
+        }
+        try {
+            test.run(url, loadQueries(Path.of(options.getOrDefault("load.queries", "recherches.log"))));
+        } finally {
+            if (app != null) app.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Application locale sur un port libre ; index, historique et journal à part pour ne pas toucher ceux du poste.
+     * Passés en ligne de commande (application.properties l'emporterait sur des propriétés par défaut).
+     */
+    private static ConfigurableApplicationContext startApplication(String[] args, Map<String, String> options) {
+        Map<String, String> local = Map.of(
+                "server.port", "0",
+                "pdf.storage-dir", "src/main/resources/static/pdf",
+                "index.dir", "target/load-test/index",
+                "history.dir", "target/load-test/history",
+                "history.import-legacy", "false",
+                "audit.dir", "target/load-test/logs"
+        );
+        List<String> appArgs = new ArrayList<>(List.of(args));
+        local.forEach((key, value) -> {
+            if (!options.containsKey(key)) appArgs.add("--" + key + "=" + value);
+        });
+        return SpringApplication.run(ArchiWebApplication.class, appArgs.toArray(String[]::new));
+    }
+
+    private static void awaitIndexReady(String baseUrl) throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        HttpRequest status = HttpRequest.newBuilder(URI.create(baseUrl + "/api/index/status")).build();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            String body = http.send(status, HttpResponse.BodyHandlers.ofString()).body();
+            if (body.contains("\"ready\":true")) {
+                System.out.println("[Load] index prêt : " + body);
+                return;
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("index non prêt au bout de 10 minutes");
+    }
+
+    /**
+     * Requêtes de recherches.log, avec leurs répétitions : le tirage respecte la fréquence réelle.
+     */
+    static List<String> loadQueries(Path log) throws Exception {
+        List<String> queries = new ArrayList<>();
+        if (Files.exists(log)) {
+            for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+                Matcher m = RECORD_START.matcher(line);
+                if (m.find() && !m.group(1).isBlank()) queries.add(m.group(1));
+            }
+        }
+        if (queries.isEmpty()) queries.addAll(DEFAULT_QUERIES);
+        System.out.println("[Load] " + queries.size() + " requêtes (" + queries.stream().distinct().count()
+                + " distinctes) depuis " + (Files.exists(log) ? log : "la liste par défaut"));
+        return queries;
+    }
+
+    void run(String url, List<String> queries) throws Exception {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(1 << 20);
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient(container));
+        client.setMessageConverter(new SimpleMessageConverter());
+        client.setInboundMessageSizeLimit(1 << 20);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        client.setTaskScheduler(scheduler);
+
+        System.out.println("[Load] " + sessions + " sessions x " + searchesPerSession + " recherches sur " + url
+                + " (limit=" + limit + ", format=" + format + ")");
+        CountDownLatch done = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < sessions; s++) {
+                long delay = sessions > 1 ? rampMillis * s / (sessions - 1) : 0;
+                Random random = new Random(s);
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(delay);
+                        runSession(client, url, queries, random);
+                    } catch (Exception e) {
+                        error("session: " + e.getClass().getSimpleName());
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+        long elapsed = System.nanoTime() - start;
+        client.stop();
+        scheduler.shutdown();
+        report(elapsed);
+    }
+
+    private void runSession(WebSocketStompClient client, String url, List<String> queries, Random random) throws Exception {
+        StompSession session = client.connectAsync(url, new StompSessionHandlerAdapter() {
+        }).get(30, TimeUnit.SECONDS);
+        String sessionId = UUID.randomUUID().toString();
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        session.subscribe("/queue/results-" + sessionId, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                byte[] body = (byte[]) payload;
+                bytes.addAndGet(body.length);
+                inbox.add(new String(body, StandardCharsets.UTF_8));
+            }
+        });
+        try {
+            for (int i = 0; i < searchesPerSession; i++) {
+                search(session, sessionId, inbox, queries.get(random.nextInt(queries.size())));
+            }
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Une recherche complète : demande initiale, puis suites tant que le serveur répond "HAS_MORE".
+     */
+    private void search(StompSession session, String sessionId, BlockingQueue<String> inbox, String query) throws Exception {
+        searches.incrementAndGet();
+        inbox.clear();
+        long start = System.nanoTime();
+        boolean first = true;
+        int pages = 1;
+        send(session, "/app/startSearch", "{\"query\":" + json(query) + ",\"sessionId\":" + json(sessionId)
+                + ",\"user\":\"load\",\"limit\":" + limit + ",\"format\":" + json(format) + "}");
+        while (true) {
+            long left = timeoutNanos - (System.nanoTime() - start);
+            String frame = left > 0 ? inbox.poll(left, TimeUnit.NANOSECONDS) : null;
+            if (frame == null) {
+                error("timeout");
+                return;
+            }
+            if (frame.startsWith("ERROR")) {
+                error(frame);
+                return;
+            }
+            if (frame.equals("COMPLETED") || (frame.equals("HAS_MORE") && maxPages > 0 && pages >= maxPages)) {
+                completed.add(System.nanoTime() - start);
+                return;
+            }
+            if (frame.equals("HAS_MORE")) {
+                pages++;
+                send(session, "/app/moreResults", "{\"sessionId\":" + json(sessionId) + ",\"limit\":" + limit + "}");
+                continue;
+            }
+            frames.incrementAndGet();
+            if (first) {
+                firstResult.add(System.nanoTime() - start);
+                first = false;
+            }
+        }
+    }
+
+    private static void send(StompSession session, String destination, String json) {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        session.send(headers, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String json(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void error(String kind) {
+        errors.incrementAndGet();
+        // "ERROR: ..." du serveur : le message sert de catégorie (tronqué, une requête invalide reste lisible)
+        String key = kind.length() > 80 ? kind.substring(0, 80) : kind;
+        errorKinds.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        int total = searches.get();
+        System.out.println("[Load] ---- " + total + " recherches en " + String.format(Locale.ROOT, "%.1f", seconds) + " s");
+        System.out.println("[Load] premier résultat  " + percentiles(firstResult) + "  (" + firstResult.size() + " recherches avec résultats)");
+        System.out.println("[Load] COMPLETED         " + percentiles(completed));
+        System.out.println(String.format(Locale.ROOT, "[Load] débit %.1f recherches/s, %.0f trames/s, %.2f Mo/s",
+                completed.size() / seconds, frames.get() / seconds, bytes.get() / seconds / (1 << 20)));
+        System.out.println(String.format(Locale.ROOT, "[Load] erreurs %d/%d (%.2f %%)",
+                errors.get(), total, total == 0 ? 0.0 : 100.0 * errors.get() / total));
+        errorKinds.forEach((kind, n) -> System.out.println("[Load]   " + n + " x " + kind));
+    }
+
+    private static String percentiles(ConcurrentLinkedQueue<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        if (sorted.isEmpty()) return "aucune mesure";
+        Collections.sort(sorted);
+        return String.format(Locale.ROOT, "p50=%.1f ms p95=%.1f ms p99=%.1f ms max=%.1f ms",
+                at(sorted, 0.50), at(sorted, 0.95), at(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double at(List<Long> sorted, double quantile) {
+        int i = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, i)) / 1e6;
+    }
+
+    private int intOption(String key, int defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,72 @@
+package pdf.archi_web.benchmarks;
+
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pdf.archi_web.PageTextStore;
+import pdf.archi_web.PdfIndexer;
+import pdf.archi_web.Suggester;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latence d'une suggestion de saisie ({@link Suggester#lookup}) sur les PDF livrés + un corpus synthétique :
+ * préfixe court (requête par préfixe), mot incomplet (n-grammes), deux mots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SuggestBenchmark {
+
+    @Param({"gu", "rechauf", "rafael na"})
+    public String prefix;
+
+    private Suggester suggester;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<Path> pdfs = new ArrayList<>(Corpus.bundled());
+        pdfs.addAll(Corpus.synthetic(4, 100));
+        suggester = new Suggester(new ByteBuffersDirectory());
+        try (PageTextStore texts = Corpus.textStore()) {
+            for (Path pdf : pdfs) {
+                Suggester.Harvest harvest = new Suggester.Harvest();
+                try (PDDocument document = Loader.loadPDF(pdf.toFile())) {
+                    PdfIndexer.extractPages(document, pdf.getFileName().toString(), 1, document.getNumberOfPages(), texts,
+                            page -> harvest.addPage(page.getField("content").stringValue()));
+                }
+                suggester.add(harvest);
+            }
+        }
+        if (suggester.lookup(prefix, 8).isEmpty()) throw new IllegalStateException("aucune suggestion pour " + prefix);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        suggester.close();
+    }
+
+    @Benchmark
+    public List<Suggester.Suggestion> lookup() throws Exception {
+        return suggester.lookup(prefix, 8);
+    }
+}
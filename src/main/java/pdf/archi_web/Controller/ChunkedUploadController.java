@@ -0,0 +1,115 @@
+package pdf.archi_web.Controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.DTO.UploadSessionStatus;
+import pdf.archi_web.Service.ChunkedUploadService;
+import pdf.archi_web.Service.UploadJobService;
+import pdf.archi_web.services.AuditLogService;
+import pdf.archi_web.services.IndexingService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Upload reprenable par morceaux (gros PDF) :
+ * <ol>
+ *     <li>POST /api/upload/sessions?filename=&size= : ouvre la session (201) ;</li>
+ *     <li>PUT /api/upload/sessions/{id}/chunks/{index}, corps brut + en-tête X-Chunk-Sha256, dans n'importe quel ordre ;</li>
+ *     <li>GET /api/upload/sessions/{id} : morceaux manquants, pour reprendre après une coupure ;</li>
+ *     <li>POST /api/upload/sessions/{id}/complete : indexation comme un upload direct (202, suivre jobId).</li>
+ * </ol>
+ */
+@RestController
+@RequestMapping("/api/upload/sessions")
+public class ChunkedUploadController {
+
+    private final ChunkedUploadService chunked;
+    private final AuditLogService audit;
+
+    public ChunkedUploadController(ChunkedUploadService chunked, AuditLogService audit) {
+        this.chunked = chunked;
+        this.audit = audit;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionStatus> start(@RequestParam String filename,
+                                                     @RequestParam long size,
+                                                     @RequestParam(defaultValue = "0") int chunkSize,
+                                                     @RequestParam(value = "user", defaultValue = "Maxime") String user) throws IOException {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(chunked.start(filename, size, chunkSize, user));
+        } catch (RuntimeException e) {
+            audit.logUploadError(user, filename, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Corps de la requête écrit directement dans le fichier, sans passer par la mémoire ni un fichier temporaire.
+     */
+    @PutMapping("/{sessionId}/chunks/{index}")
+    public UploadSessionStatus chunk(@PathVariable String sessionId, @PathVariable int index,
+                                     @RequestHeader("X-Chunk-Sha256") String sha256,
+                                     InputStream body) throws IOException {
+        return chunked.writeChunk(sessionId, index, sha256, body);
+    }
+
+    @GetMapping("/{sessionId}")
+    public UploadSessionStatus status(@PathVariable String sessionId) {
+        return chunked.status(sessionId);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<?> complete(@PathVariable String sessionId) throws Exception {
+        UploadSessionStatus session = chunked.status(sessionId);
+        String user = chunked.user(sessionId);
+        try {
+            var res = chunked.complete(sessionId);
+            audit.logUploadOk(user, res.getFilename(), session.getSize(), res.getUrl());
+            // 202 : stocké, indexation en cours (suivre jobId)
+            return ResponseEntity.accepted().body(res);
+        } catch (UploadJobService.QueueFullException | IllegalStateException e) {
+            throw e; // session intacte : le client réessaie
+        } catch (Exception e) {
+            audit.logUploadError(user, session.getFilename(), e.getMessage());
+            throw e;
+        }
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abort(@PathVariable String sessionId) throws IOException {
+        chunked.abort(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(ChunkedUploadService.UnknownSessionException.class)
+    public ResponseEntity<String> unknown(ChunkedUploadService.UnknownSessionException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    }
+
+    @ExceptionHandler({UploadJobService.QueueFullException.class, ChunkedUploadService.TooManySessionsException.class})
+    public ResponseEntity<String> busy(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(IndexingService.ReadOnlyException.class)
+    public ResponseEntity<String> readOnly(IndexingService.ReadOnlyException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    /** Morceaux manquants, ou morceau déjà en cours d'envoi. */
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,101 @@
+// src/main/java/pdf/archi_web/Controller/HistoryController.java
+package pdf.archi_web.Controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.DTO.HistoryEntry;
+import pdf.archi_web.services.HistoryStore;
+
+import java.io.IOException;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historique des recherches et uploads (voir {@link HistoryStore}).
+ * Périodes : {@code from}/{@code to} en date (2025-09-09) ou instant ISO-8601 ; par défaut les 30 derniers jours.
+ */
+@RestController
+@RequestMapping("/api/history")
+public class HistoryController {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private final HistoryStore history;
+
+    public HistoryController(HistoryStore history) {
+        this.history = history;
+    }
+
+    /**
+     * Derniers événements, filtrables par utilisateur, requête (casse ignorée) et action (SEARCH, UPLOAD).
+     */
+    @GetMapping
+    public List<HistoryEntry> recent(@RequestParam(required = false) String from,
+                                     @RequestParam(required = false) String to,
+                                     @RequestParam(required = false) String user,
+                                     @RequestParam(required = false) String query,
+                                     @RequestParam(required = false) String action,
+                                     @RequestParam(defaultValue = "50") int limit) throws IOException {
+        long[] range = range(from, to);
+        return history.recent(range[0], range[1], user, query, action == null ? null : action.toUpperCase(),
+                Math.min(Math.max(limit, 1), 1000));
+    }
+
+    /**
+     * Requêtes les plus fréquentes, avec taux d'erreur, nombre moyen de résultats et durée moyenne.
+     */
+    @GetMapping("/top-queries")
+    public List<HistoryStore.QueryStat> topQueries(@RequestParam(required = false) String from,
+                                                   @RequestParam(required = false) String to,
+                                                   @RequestParam(required = false) String user,
+                                                   @RequestParam(defaultValue = "10") int limit) throws IOException {
+        long[] range = range(from, to);
+        return history.topQueries(range[0], range[1], user, Math.min(Math.max(limit, 1), 1000));
+    }
+
+    /**
+     * Agrégats par intervalle (hour, day, week) : recherches, uploads, erreurs, résultats et durées.
+     * 400 si la période compte plus de {@link HistoryStore#MAX_BUCKETS} intervalles.
+     */
+    @GetMapping("/stats")
+    public List<HistoryStore.Bucket> stats(@RequestParam(required = false) String from,
+                                           @RequestParam(required = false) String to,
+                                           @RequestParam(required = false) String user,
+                                           @RequestParam(required = false) String query,
+                                           @RequestParam(defaultValue = "day") String interval) throws IOException {
+        long[] range = range(from, to);
+        long bucketMs = switch (interval) {
+            case "hour" -> Duration.ofHours(1).toMillis();
+            case "week" -> Duration.ofDays(7).toMillis();
+            default -> Duration.ofDays(1).toMillis();
+        };
+        return history.stats(range[0], range[1], bucketMs, user, query);
+    }
+
+    @ExceptionHandler(DateTimeParseException.class)
+    public ResponseEntity<Map<String, String>> badDate(DateTimeParseException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "date invalide : " + e.getParsedString()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRange(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    private static long[] range(String from, String to) {
+        long end = to == null ? System.currentTimeMillis() + 1 : parse(to, true);
+        long start = from == null ? end - Duration.ofDays(30).toMillis() : parse(from, false);
+        return new long[]{start, end};
+    }
+
+    /** Date seule : début du jour (ou début du lendemain pour une borne de fin, incluse). */
+    private static long parse(String value, boolean endOfRange) {
+        if (value.length() == 10) {
+            LocalDate day = LocalDate.parse(value);
+            return (endOfRange ? day.plusDays(1) : day).atStartOfDay(PARIS).toInstant().toEpochMilli();
+        }
+        return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,36 @@
+// src/main/java/pdf/archi_web/Controller/IndexStatusController.java
+package pdf.archi_web.Controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.DTO.IndexStatus;
+import pdf.archi_web.services.IndexingProgress;
+
+@RestController
+@RequestMapping("/api/index")
+public class IndexStatusController {
+
+    private final IndexingProgress progress;
+
+    public IndexStatusController(IndexingProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Avancement de l'indexation de démarrage (fichiers faits/total, ETA).
+     */
+    @GetMapping("/status")
+    public IndexStatus status() {
+        return progress.snapshot();
+    }
+
+    /**
+     * 200 quand tout le corpus est indexé, 503 sinon (sonde de readiness pour les déploiements).
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<IndexStatus> ready() {
+        IndexStatus status = progress.snapshot();
+        return ResponseEntity.status(status.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(status);
+    }
+}
@@ -0,0 +1,62 @@
+package pdf.archi_web.Controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.IndexPublisher;
+import pdf.archi_web.IndexRevision;
+import pdf.archi_web.services.IndexingService;
+
+import java.io.IOException;
+
+/**
+ * Canal de réplication servi par le primaire : dernière révision publiée et fichiers qu'elle référence.
+ * Les répliques l'interrogent (cf. ReplicationService) ; absent (404) sur une réplique.
+ */
+@RestController
+@RequestMapping("/api/replication")
+public class ReplicationController {
+
+    private final IndexingService indexingService;
+
+    public ReplicationController(IndexingService indexingService) {
+        this.indexingService = indexingService;
+    }
+
+    /**
+     * Dernière révision publiée (204 tant que l'index n'a pas de commit).
+     */
+    @GetMapping("/revision")
+    public ResponseEntity<IndexRevision> revision() {
+        IndexPublisher publisher = indexingService.getPublisher();
+        if (publisher == null) return ResponseEntity.notFound().build();
+        IndexRevision latest = publisher.latest();
+        return latest == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(latest);
+    }
+
+    /**
+     * Fichier d'un commit publié (404 s'il n'appartient plus aux publications retenues).
+     */
+    @GetMapping("/files/{index}/{name}")
+    public void file(@PathVariable String index, @PathVariable String name, HttpServletResponse response) throws IOException {
+        IndexPublisher publisher = indexingService.getPublisher();
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        if (publisher == null || !publisher.copyFile(index, name, response.getOutputStream())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * Texte des pages publié, à partir de l'octet {@code from} (le début est déjà chez la réplique).
+     */
+    @GetMapping("/text/{name}")
+    public void text(@PathVariable String name, @RequestParam(defaultValue = "0") long from,
+                     HttpServletResponse response) throws IOException {
+        IndexPublisher publisher = indexingService.getPublisher();
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        if (publisher == null || !publisher.copyText(name, from, response.getOutputStream())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+}
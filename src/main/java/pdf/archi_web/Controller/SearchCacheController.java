@@ -0,0 +1,26 @@
+// src/main/java/pdf/archi_web/Controller/SearchCacheController.java
+package pdf.archi_web.Controller;
+
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.SearchCache;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/search/cache")
+public class SearchCacheController {
+
+    private final SearchCache cache;
+
+    public SearchCacheController(SearchCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Hits/misses, évictions et taille (entrées, octets estimés) du cache de résultats.
+     */
+    @GetMapping
+    public Map<String, Object> stats() {
+        return cache.stats();
+    }
+}
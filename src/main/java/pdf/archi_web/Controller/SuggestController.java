@@ -0,0 +1,27 @@
+package pdf.archi_web.Controller;
+
+import org.springframework.web.bind.annotation.*;
+import pdf.archi_web.DTO.Suggestions;
+import pdf.archi_web.services.SuggestService;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/suggest")
+public class SuggestController {
+
+    private final SuggestService suggestService;
+
+    public SuggestController(SuggestService suggestService) {
+        this.suggestService = suggestService;
+    }
+
+    /**
+     * Suggestions pour la saisie en cours (mots et expressions du corpus commençant par les mots saisis).
+     */
+    @GetMapping
+    public Suggestions suggest(@RequestParam("q") String query,
+                               @RequestParam(defaultValue = "0") int limit) throws IOException {
+        return suggestService.suggest(query, limit);
+    }
+}
@@ -1,22 +1,28 @@
 // src/main/java/pdf/archi_web/Controller/UploadController.java
 package pdf.archi_web.Controller;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import pdf.archi_web.Service.UploadJobService;
 import pdf.archi_web.Service.UploadService;
 import pdf.archi_web.services.AuditLogService;
+import pdf.archi_web.services.IndexingService;
 
 @RestController
 @RequestMapping("/api/upload")
 public class UploadController {
 
     private final UploadService uploadService;
+    private final UploadJobService jobs;
     private final AuditLogService audit;
 
-    public UploadController(UploadService uploadService, AuditLogService audit) {
+    public UploadController(UploadService uploadService, UploadJobService jobs, AuditLogService audit) {
         this.uploadService = uploadService;
+        this.jobs = jobs;
         this.audit = audit;
     }
 
@@ -25,10 +31,19 @@ public class UploadController {
                                     @RequestParam(value = "user", defaultValue = "Maxime") String user) {
         String filename = file != null ? file.getOriginalFilename() : null;
         try {
-            var res = uploadService.storeAndIndex(file);
+            var res = uploadService.storeAndIndex(file, user);
             audit.logUploadOk(user, res.getFilename(), file.getSize());
             audit.logUploadOk(user, res.getFilename(), file.getSize(), res.getUrl());
-            return ResponseEntity.ok(res);
+            // 202 : stocké, indexation en cours (suivre jobId)
+            return ResponseEntity.accepted().body(res);
+        } catch (UploadJobService.QueueFullException full) {
+            audit.logUploadError(user, filename, full.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(full.getMessage());
+        } catch (IndexingService.ReadOnlyException readOnly) {
+            audit.logUploadError(user, filename, readOnly.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(readOnly.getMessage());
         } catch (IllegalArgumentException iae) {
             audit.logUploadError(user, filename, iae.getMessage());
             return ResponseEntity.badRequest().body(iae.getMessage());
@@ -38,4 +53,9 @@ public class UploadController {
             return ResponseEntity.internalServerError().body("Erreur upload/indexation : " + e.getMessage());
         }
     }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<UploadJobService.UploadJob> job(@PathVariable String jobId) {
+        return ResponseEntity.of(jobs.find(jobId));
+    }
 }
@@ -9,14 +9,17 @@ import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import pdf.archi_web.services.StreamingService;
+import pdf.archi_web.services.SuggestService;
 
 @Controller
 public class SearchWebSocketController {
 
     private final StreamingService streamingService;
+    private final SuggestService suggestService;
 
-    public SearchWebSocketController(StreamingService streamingService) {
+    public SearchWebSocketController(StreamingService streamingService, SuggestService suggestService) {
         this.streamingService = streamingService;
+        this.suggestService = suggestService;
     }
 
     @MessageMapping("/startSearch")
@@ -24,7 +27,26 @@ public class SearchWebSocketController {
         String sessionId = headerAccessor.getSessionId();
         System.out.println("Recherche démarrée pour la session: " + sessionId + " query=" + request.getQuery());
         String user = (request.getUser() == null || request.getUser().isBlank()) ? "Maxime" : request.getUser();
-        streamingService.streamResultsForUser(request.getSessionId(), request.getQuery(), user);
+        int limit = request.getLimit() == null ? 0 : request.getLimit();
+        streamingService.streamResultsForUser(sessionId, request.getSessionId(), request.getQuery(), user, limit, request.getFormat());
+    }
+
+    /**
+     * Le client demande la suite de sa recherche en cours (après un "HAS_MORE").
+     */
+    @MessageMapping("/moreResults")
+    public void moreResults(@Payload MoreRequest request) {
+        int limit = request.getLimit() == null ? 0 : request.getLimit();
+        streamingService.moreResults(request.getSessionId(), limit);
+    }
+
+    /**
+     * Suggestions pendant la saisie, renvoyées sur /queue/suggest-{sessionId} (traitées sur place : consultation courte).
+     */
+    @MessageMapping("/suggest")
+    public void suggest(@Payload SuggestRequest request) {
+        int limit = request.getLimit() == null ? 0 : request.getLimit();
+        suggestService.sendSuggestions(request.getSessionId(), request.getQuery(), limit);
     }
 
 
@@ -33,6 +55,21 @@ public class SearchWebSocketController {
         private String query;
         private String sessionId; // client hint (non utilisé pour router)
         private String user = "Maxime";
+        private Integer limit; // nombre de résultats voulus pour le premier lot (défaut : search.page.size)
+        private String format; // single (une trame par résultat), batch ou compact (défaut : search.stream.default-format)
+    }
+
+    @Setter @Getter
+    public static class MoreRequest {
+        private String sessionId;
+        private Integer limit;
+    }
+
+    @Setter @Getter
+    public static class SuggestRequest {
+        private String query;
+        private String sessionId;
+        private Integer limit; // défaut : suggest.limit
     }
 
 }
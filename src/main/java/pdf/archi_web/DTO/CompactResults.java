@@ -0,0 +1,36 @@
+package pdf.archi_web.DTO;
+
+import lombok.Getter;
+
+import java.util.List;
+
+
+/**
+ * Lot de résultats en encodage compact : chaque fichier n'est décrit qu'une fois par recherche
+ * (dans le premier lot où il apparaît), les lignes ne portent que son numéro.
+ * <p>
+ * hits : [fichier, page, paragraphe, ligne, contenu] ; l'url d'un résultat est {@code url + "#page=" + page}.
+ */
+@Getter
+public class CompactResults {
+    private final List<FileRef> files;
+    private final List<Object[]> hits;
+
+    public CompactResults(List<FileRef> files, List<Object[]> hits) {
+        this.files = files;
+        this.hits = hits;
+    }
+
+    @Getter
+    public static class FileRef {
+        private final int id;
+        private final String filename;
+        private final String url;
+
+        public FileRef(int id, String filename, String url) {
+            this.id = id;
+            this.filename = filename;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package pdf.archi_web.DTO;
+
+import lombok.Getter;
+
+
+/**
+ * Un événement d'audit (recherche ou upload), tel qu'écrit dans logs/audit.log et dans l'historique indexé.
+ * Les champs sans objet pour l'action sont null.
+ */
+@Getter
+public class HistoryEntry {
+    private final long timestamp; // epoch ms
+    private final String user;
+    private final String action;  // SEARCH, UPLOAD
+    private final String status;  // OK, ERROR, CANCELLED (recherche arrêtée avant la fin)
+    private final String query;
+    private final String filename;
+    private final Long sizeBytes;
+    private final String url;
+    private final Integer occurrences;
+    private final Long latencyMs;
+    private final String error;
+
+    public HistoryEntry(long timestamp, String user, String action, String status, String query, String filename,
+                        Long sizeBytes, String url, Integer occurrences, Long latencyMs, String error) {
+        this.timestamp = timestamp;
+        this.user = user;
+        this.action = action;
+        this.status = status;
+        this.query = query;
+        this.filename = filename;
+        this.sizeBytes = sizeBytes;
+        this.url = url;
+        this.occurrences = occurrences;
+        this.latencyMs = latencyMs;
+        this.error = error;
+    }
+}
@@ -0,0 +1,30 @@
+package pdf.archi_web.DTO;
+
+import lombok.Getter;
+
+
+@Getter
+public class IndexStatus {
+    private final String state;
+    private final boolean ready;
+    private final int filesDone;
+    private final int filesFailed;
+    private final int filesTotal;
+    private final long pagesIndexed;
+    private final long elapsedMs;
+    private final Long etaMs; // null tant qu'aucune estimation n'est possible
+    private final String error;
+
+    public IndexStatus(String state, boolean ready, int filesDone, int filesFailed, int filesTotal,
+                       long pagesIndexed, long elapsedMs, Long etaMs, String error) {
+        this.state = state;
+        this.ready = ready;
+        this.filesDone = filesDone;
+        this.filesFailed = filesFailed;
+        this.filesTotal = filesTotal;
+        this.pagesIndexed = pagesIndexed;
+        this.elapsedMs = elapsedMs;
+        this.etaMs = etaMs;
+        this.error = error;
+    }
+}
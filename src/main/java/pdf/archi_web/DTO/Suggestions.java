@@ -0,0 +1,22 @@
+package pdf.archi_web.DTO;
+
+import lombok.Getter;
+import pdf.archi_web.Suggester;
+
+import java.util.List;
+
+
+/**
+ * Réponse de suggestion : la saisie qui l'a produite est renvoyée, le client ignore les réponses
+ * à une saisie déjà dépassée.
+ */
+@Getter
+public class Suggestions {
+    private final String query;
+    private final List<Suggester.Suggestion> suggestions;
+
+    public Suggestions(String query, List<Suggester.Suggestion> suggestions) {
+        this.query = query;
+        this.suggestions = suggestions;
+    }
+}
@@ -0,0 +1,31 @@
+package pdf.archi_web.DTO;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * État d'un upload par morceaux : le client reprend en renvoyant les morceaux de {@code missing}.
+ * Le morceau {@code i} couvre les octets {@code [i * chunkSize, min((i + 1) * chunkSize, size))}.
+ */
+@Getter
+public class UploadSessionStatus {
+    private final String sessionId;
+    private final String filename;
+    private final long size;
+    private final int chunkSize;
+    private final int chunks;
+    private final int received;
+    private final List<Integer> missing;
+
+    public UploadSessionStatus(String sessionId, String filename, long size, int chunkSize, int chunks,
+                               int received, List<Integer> missing) {
+        this.sessionId = sessionId;
+        this.filename = filename;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+        this.received = received;
+        this.missing = missing;
+    }
+}
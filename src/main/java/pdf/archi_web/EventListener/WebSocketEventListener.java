@@ -4,10 +4,17 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import pdf.archi_web.services.StreamingService;
 
 @Component
 public class WebSocketEventListener {
 
+    private final StreamingService streamingService;
+
+    public WebSocketEventListener(StreamingService streamingService) {
+        this.streamingService = streamingService;
+    }
+
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectEvent event) {
         System.out.println("Nouvelle connexion STOMP : " + event.getMessage());
@@ -16,5 +23,7 @@ public class WebSocketEventListener {
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         System.out.println("Déconnexion STOMP : " + event.getSessionId());
+        // plus personne pour lire les résultats : on arrête les recherches de cette connexion
+        streamingService.cancelConnection(event.getSessionId());
     }
 }
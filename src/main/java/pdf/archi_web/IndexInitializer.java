@@ -1,13 +1,22 @@
 package pdf.archi_web;
 
-import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import pdf.archi_web.services.IndexingProgress;
+import pdf.archi_web.services.IndexingService;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Component
 public class IndexInitializer {
@@ -15,39 +24,107 @@ public class IndexInitializer {
   @Value("${pdf.storage-dir:src/main/resources/static/pdf}")
   private String storageDir;
 
-  @PostConstruct
+  // Force la reconstruction complète de l'index au démarrage (sinon : incrémental via le manifeste)
+  @Value("${index.rebuild-on-startup:false}")
+  private boolean rebuildOnStartup;
+
+  private final IndexingService indexingService;
+  private final IndexingProgress progress;
+
+  public IndexInitializer(IndexingService indexingService, IndexingProgress progress) {
+    this.indexingService = indexingService;
+    this.progress = progress;
+  }
+
+  /**
+   * L'indexation ne bloque plus le démarrage : /ws et /api/upload sont servis tout de suite,
+   * les recherches voient les documents au fil des commits (refresh NRT), l'avancement est sur /api/index/status.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void startInBackground() {
+    if (indexingService.isReplica()) {
+      return; // l'index vient du primaire (ReplicationService)
+    }
+    Thread t = new Thread(() -> {
+      try {
+        init();
+        progress.ready();
+      } catch (Exception e) {
+        System.err.println("Indexation de démarrage échouée: " + e.getMessage());
+        progress.failed(e.getMessage());
+      }
+    }, "index-startup");
+    t.setDaemon(true);
+    t.start();
+  }
+
   public void init() throws Exception {
-    Path indexPath = Path.of("index");
+    progress.start();
 
-    // --- 1) Vider l'index existant avant recréation ---
-    if (Files.exists(indexPath)) {
+    // --- 1) Vider l'index seulement si demandé ou si le schéma a changé ---
+    if (rebuildOnStartup || indexingService.needsFullRebuild()) {
       System.out.println("Suppression du cache Lucene...");
-      Files.walk(indexPath)
-              .map(Path::toFile)
-              .sorted((a, b) -> -a.compareTo(b)) // Fichiers d'abord, dossiers ensuite
-              .forEach(File::delete);
+      indexingService.deleteAll();
     }
 
-    // Recréation du dossier index vide
-    Files.createDirectories(indexPath);
-
     // --- 2) Vérifier et préparer le dossier PDF ---
     Path pdfDir = Path.of(storageDir).toAbsolutePath().normalize();
     Files.createDirectories(pdfDir);
 
     File[] pdfFiles = pdfDir.toFile().listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
-    if (pdfFiles == null || pdfFiles.length == 0) {
+    if (pdfFiles == null) pdfFiles = new File[0];
+    if (pdfFiles.length == 0) {
       System.out.println("Aucun PDF trouvé sous: " + pdfDir);
-      return;
     }
 
-    // --- 3) Réindexation des PDF ---
-    PdfIndexer indexer = new PdfIndexer(indexPath.toString());
+    // --- 3) Suppression des documents dont le PDF a disparu (d'abord : rapide, et plus de résultats fantômes) ---
+    Set<String> present = new HashSet<>();
     for (File pdf : pdfFiles) {
+      present.add(pdf.getName());
+    }
+    int removed = 0;
+    for (String filename : indexingService.indexedFilenames()) {
+      if (!present.contains(filename)) {
+        System.out.println("Document supprimé: " + filename);
+        indexingService.deleteFile(filename);
+        removed++;
+      }
+    }
+
+    // --- 4) Indexation des PDF nouveaux ou modifiés (pipeline parallèle : tous soumis, puis attendus) ---
+    List<CompletableFuture<Integer>> jobs = new ArrayList<>();
+    long start = System.nanoTime();
+    for (File pdf : pdfFiles) {
+      if (indexingService.isUpToDate(pdf.toPath())) continue;
       System.out.println("Document trouvé: " + pdf.getAbsolutePath());
-      indexer.indexPdf(pdf.getAbsolutePath());
+      long size = pdf.length();
+      progress.fileQueued(size);
+      jobs.add(indexingService.submit(pdf.toPath()).whenComplete((pages, err) -> {
+        if (err != null) {
+          System.err.println("Indexation échouée: " + pdf.getName() + " -> " + err.getMessage());
+          progress.fileFailed(size);
+        } else {
+          progress.fileDone(size, pages);
+        }
+      }));
+    }
+    int indexed = 0;
+    long pages = 0;
+    for (CompletableFuture<Integer> job : jobs) {
+      try {
+        pages += job.join();
+        indexed++;
+      } catch (CompletionException ignored) {
+        // déjà journalisé ; le fichier sera retenté au prochain démarrage (absent du manifeste)
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+    if (pages > 0) {
+      System.out.printf("%d pages extraites en %.1f s (%.1f pages/s)%n", pages, seconds, pages / seconds);
     }
+    indexingService.commit();
 
-    System.out.println("Indexation terminée (démarrage).");
+    System.out.println("Indexation terminée (démarrage) : " + indexed + " indexé(s), "
+            + removed + " supprimé(s), " + (pdfFiles.length - jobs.size()) + " inchangé(s).");
   }
 }
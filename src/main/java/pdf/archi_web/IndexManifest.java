@@ -0,0 +1,168 @@
+package pdf.archi_web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifeste persistant des PDF présents dans l'index (nom -> chemin, taille, mtime, hash).
+ * Permet au démarrage de ne réindexer que les fichiers nouveaux ou modifiés.
+ * Rangé avec l'index (index.dir/manifest.json) : l'un ne va pas sans l'autre.
+ */
+public class IndexManifest {
+
+    public record Entry(String path, long size, long mtime, String sha256) {}
+
+    /** Forme sérialisée sur disque. */
+    public static class Snapshot {
+        public int schemaVersion;
+        public int shards;
+        public Map<String, Entry> files = new HashMap<>();
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile int schemaVersion;
+    private volatile int shards;
+
+    private IndexManifest(Path file, int schemaVersion) {
+        this.file = file;
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Charge le manifeste ; fichier absent ou illisible => manifeste vide de version 0 (rebuild complet).
+     */
+    public static IndexManifest load(Path file) {
+        IndexManifest manifest = new IndexManifest(file, 0);
+        if (!Files.exists(file)) return manifest;
+        try {
+            Snapshot snap = JSON.readValue(file.toFile(), Snapshot.class);
+            manifest.schemaVersion = snap.schemaVersion;
+            manifest.shards = snap.shards;
+            manifest.entries.putAll(snap.files);
+        } catch (Exception e) {
+            System.err.println("[Manifest] illisible, réindexation complète: " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    /**
+     * Manifeste sans fichier, pour un index en mémoire : vide à chaque démarrage, comme l'index.
+     */
+    public static IndexManifest inMemory() {
+        return new IndexManifest(null, 0);
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /** Nombre de shards de l'index décrit (0 : manifeste antérieur aux shards). */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Vide le manifeste et le rattache à une nouvelle version de schéma et de découpage (réindexation complète).
+     */
+    public void reset(int newSchemaVersion, int newShards) {
+        entries.clear();
+        schemaVersion = newSchemaVersion;
+        shards = newShards;
+    }
+
+    /**
+     * Vrai si le fichier est absent du manifeste ou a changé de contenu.
+     * Taille et mtime identiques => inchangé sans relire le fichier ; sinon on compare le hash
+     * (un simple « touch » ne déclenche donc pas de réextraction).
+     */
+    public boolean needsIndexing(Path pdf) throws IOException {
+        String name = pdf.getFileName().toString();
+        Entry known = entries.get(name);
+        if (known == null) return true;
+
+        long size = Files.size(pdf);
+        long mtime = Files.getLastModifiedTime(pdf).toMillis();
+        if (known.size() == size && known.mtime() == mtime) return false;
+
+        String hash = sha256(pdf);
+        if (!hash.equals(known.sha256())) return true;
+
+        entries.put(name, new Entry(pdf.toString(), size, mtime, hash));
+        return false;
+    }
+
+    public void record(Path pdf) throws IOException {
+        record(pdf, sha256(pdf));
+    }
+
+    public void record(Path pdf, String sha256) throws IOException {
+        entries.put(pdf.getFileName().toString(), new Entry(pdf.toString(),
+                Files.size(pdf), Files.getLastModifiedTime(pdf).toMillis(), sha256));
+    }
+
+    public void remove(String filename) {
+        entries.remove(filename);
+    }
+
+    /**
+     * Fichier indexé avec exactement ce contenu et toujours présent sur disque (détection des doublons à l'upload).
+     */
+    public Optional<Path> findBySha256(String sha256) {
+        return entries.values().stream()
+                .filter(e -> sha256.equals(e.sha256()))
+                .map(e -> Path.of(e.path()))
+                .filter(Files::exists)
+                .findFirst();
+    }
+
+    public Set<String> filenames() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    /**
+     * Écriture atomique (fichier temporaire puis rename) : le manifeste n'est jamais à moitié écrit.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) return;
+        Snapshot snap = new Snapshot();
+        snap.schemaVersion = schemaVersion;
+        snap.shards = shards;
+        snap.files.putAll(entries);
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        JSON.writeValue(tmp.toFile(), snap);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+}
@@ -0,0 +1,216 @@
+package pdf.archi_web;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Côté primaire de la réplication : après chaque commit, publie une {@link IndexRevision} et sert
+ * les fichiers qu'elle référence aux répliques.
+ * <p>
+ * Les commits publiés sont retenus (SnapshotDeletionPolicy) : leurs fichiers ne sont pas supprimés
+ * par les fusions tant qu'une réplique peut être en train de les copier. Seules les {@link #KEEP}
+ * dernières publications sont retenues ; une réplique en retard reprend sur la plus récente.
+ */
+public class IndexPublisher {
+
+    /** Publications retenues (la courante et la précédente). */
+    public static final int KEEP = 2;
+
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    /** Retient un commit le temps de sa publication (cf. {@link SnapshotDeletionPolicy}). */
+    public interface Snapshots {
+        /** @return dernier commit, retenu jusqu'à {@link #release} ; null si l'index n'a pas encore de commit */
+        IndexCommit snapshot() throws IOException;
+
+        void release(IndexCommit commit) throws IOException;
+
+        static Snapshots of(SnapshotDeletionPolicy policy) {
+            return new Snapshots() {
+                @Override
+                public IndexCommit snapshot() throws IOException {
+                    try {
+                        return policy.snapshot();
+                    } catch (IllegalStateException e) {
+                        return null; // writer sans commit (index neuf)
+                    }
+                }
+
+                @Override
+                public void release(IndexCommit commit) throws IOException {
+                    policy.release(commit);
+                }
+            };
+        }
+    }
+
+    private record Source(Directory directory, Snapshots snapshots) {}
+
+    private record Publication(IndexRevision revision, List<IndexCommit> commits) {}
+
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+    private final Path textDir;
+    private final String id;
+    private final Deque<Publication> published = new ArrayDeque<>();
+    private long version;
+
+    /**
+     * @param textDir dossier des fichiers de texte des pages
+     * @param id      identifiant de l'index ({@link IndexRevision#ID_KEY})
+     */
+    public IndexPublisher(Path textDir, String id) {
+        this.textDir = textDir;
+        this.id = id;
+    }
+
+    /** Index à publier, dans l'ordre de copie (shards, puis suggestions). */
+    public synchronized void add(String name, Directory directory, Snapshots snapshots) {
+        sources.put(name, new Source(directory, snapshots));
+    }
+
+    /**
+     * Retient le dernier commit de chaque index et le publie s'il a changé ; à appeler après les commits.
+     * La génération du texte des pages est lue dans les données du commit du premier index.
+     *
+     * @return la publication courante, null si un index n'a pas encore de commit
+     */
+    public synchronized IndexRevision publish() throws IOException {
+        List<IndexCommit> commits = new ArrayList<>();
+        List<IndexRevision.Commit> indexes = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Source> e : sources.entrySet()) {
+                Source source = e.getValue();
+                IndexCommit commit = source.snapshots.snapshot();
+                if (commit == null) {
+                    release(commits);
+                    return latest();
+                }
+                commits.add(commit);
+                Map<String, Long> files = new TreeMap<>();
+                for (String file : commit.getFileNames()) {
+                    files.put(file, source.directory.fileLength(file));
+                }
+                indexes.add(new IndexRevision.Commit(e.getKey(), commit.getSegmentsFileName(), files));
+            }
+        } catch (IOException | RuntimeException e) {
+            release(commits);
+            throw e;
+        }
+
+        // le texte écrit depuis le commit est inclus : une longueur supérieure ne gêne pas
+        String textFile = PageTextStore.fileName(PageTextStore.generation(commits.get(0).getUserData()));
+        long textLength = Files.size(textDir.resolve(textFile));
+        IndexRevision revision = new IndexRevision(id, version + 1, System.currentTimeMillis(), List.copyOf(indexes),
+                textFile, textLength);
+        IndexRevision latest = latest();
+        if (revision.sameContent(latest)) {
+            release(commits);
+            return latest;
+        }
+        version++;
+        published.addLast(new Publication(revision, commits));
+        while (published.size() > KEEP) {
+            release(published.removeFirst().commits);
+        }
+        return revision;
+    }
+
+    public synchronized IndexRevision latest() {
+        Publication last = published.peekLast();
+        return last == null ? null : last.revision;
+    }
+
+    /**
+     * Copie un fichier d'une publication retenue.
+     * @return false si le fichier n'appartient à aucune publication retenue
+     */
+    public boolean copyFile(String index, String file, OutputStream out) throws IOException {
+        Source source;
+        synchronized (this) {
+            source = sources.get(index);
+            if (source == null || published.stream().noneMatch(p -> references(p.revision, index, file))) return false;
+        }
+        // lu hors du verrou : un fichier libéré entre-temps reste lisible une fois ouvert
+        try (IndexInput in = source.directory.openInput(file, IOContext.READONCE)) {
+            byte[] buffer = new byte[COPY_BUFFER];
+            for (long left = in.length(); left > 0; ) {
+                int n = (int) Math.min(buffer.length, left);
+                in.readBytes(buffer, 0, n);
+                out.write(buffer, 0, n);
+                left -= n;
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copie la fin publiée d'un fichier de texte des pages, à partir de {@code from}.
+     * @return false si le fichier n'appartient à aucune publication retenue
+     */
+    public boolean copyText(String file, long from, OutputStream out) throws IOException {
+        long length;
+        synchronized (this) {
+            length = published.stream()
+                    .filter(p -> p.revision.textFile().equals(file))
+                    .mapToLong(p -> p.revision.textLength())
+                    .max().orElse(-1);
+        }
+        if (length < 0 || from < 0 || from > length) return false;
+        try (FileChannel channel = FileChannel.open(textDir.resolve(file), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+            for (long position = from; position < length; ) {
+                buffer.clear().limit((int) Math.min(COPY_BUFFER, length - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) throw new IOException("fichier de texte tronqué: " + file);
+                out.write(buffer.array(), 0, n);
+                position += n;
+            }
+        } catch (NoSuchFileException e) {
+            return false; // génération retirée depuis
+        }
+        return true;
+    }
+
+    /** Libère toutes les publications (arrêt). */
+    public synchronized void close() throws IOException {
+        while (!published.isEmpty()) {
+            release(published.removeFirst().commits);
+        }
+    }
+
+    private static boolean references(IndexRevision revision, String index, String file) {
+        for (IndexRevision.Commit commit : revision.indexes()) {
+            if (commit.name().equals(index)) return commit.files().containsKey(file);
+        }
+        return false;
+    }
+
+    private void release(List<IndexCommit> commits) throws IOException {
+        int i = 0;
+        for (Source source : sources.values()) {
+            if (i == commits.size()) break;
+            source.snapshots.release(commits.get(i++));
+        }
+    }
+}
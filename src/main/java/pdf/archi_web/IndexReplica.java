@@ -0,0 +1,232 @@
+package pdf.archi_web;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Côté réplique de la réplication : amène les dossiers locaux (shards, suggestions, texte des pages)
+ * à l'état d'une {@link IndexRevision} publiée par le primaire, en ne copiant que ce qui manque.
+ * <p>
+ * Fichiers de segments d'abord, texte des pages en ajout à la fin du fichier local, et le segments_N
+ * de chaque commit en dernier (copié sous un autre nom puis renommé) : un reader qui rouvre le dossier
+ * voit l'ancien commit ou le nouveau, jamais un commit incomplet. Une copie interrompue reprend à la
+ * publication suivante ; les fichiers qui n'appartiennent plus aux dernières révisions sont supprimés
+ * par {@link #prune()}, une fois les readers rouverts.
+ */
+public class IndexReplica {
+
+    private static final String PENDING_PREFIX = "pending_";
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    /** Canal vers le primaire (HTTP : cf. ReplicationService). */
+    public interface Source {
+        InputStream file(String index, String name) throws IOException;
+
+        /** Fin du fichier de texte des pages publiée, à partir de l'octet {@code from}. */
+        InputStream text(String file, long from) throws IOException;
+    }
+
+    private final Map<String, Directory> indexes;
+    private final Path textDir;
+    private final PageTextStore textStore;
+    private final Deque<IndexRevision> applied = new ArrayDeque<>();
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private String source;
+
+    /**
+     * @param indexes   dossiers locaux par nom d'index (shard-N, suggest), le premier portant l'identifiant de l'index
+     * @param textStore store en lecture seule sur {@code textDir}
+     */
+    public IndexReplica(Map<String, Directory> indexes, Path textDir, PageTextStore textStore) throws IOException {
+        this.indexes = indexes;
+        this.textDir = textDir;
+        this.textStore = textStore;
+        // copie laissée par une exécution précédente : reprise incrémentale si le primaire n'a pas changé d'index
+        Directory first = indexes.values().iterator().next();
+        this.source = DirectoryReader.indexExists(first)
+                ? SegmentInfos.readLatestCommit(first).getUserData().get(IndexRevision.ID_KEY)
+                : null;
+    }
+
+    /**
+     * Copie ce qui manque pour atteindre la révision. Les readers doivent ensuite être rouverts.
+     * @return false si la révision était déjà appliquée
+     */
+    public synchronized boolean update(IndexRevision revision, Source primary) throws IOException {
+        if (revision.sameContent(applied.peekLast())) return false;
+        for (IndexRevision.Commit commit : revision.indexes()) {
+            if (!indexes.containsKey(commit.name())) {
+                throw new IOException("index " + commit.name() + " absent de la réplique (index.shards différent du primaire ?)");
+            }
+        }
+        if (revision.indexes().size() != indexes.size()) {
+            throw new IOException("le primaire publie " + revision.indexes().size() + " index, la réplique en a "
+                    + indexes.size() + " (index.shards différent du primaire ?)");
+        }
+        if (!revision.source().equals(source)) {
+            if (source != null) {
+                System.out.println("[Replica] le primaire a recréé son index (" + revision.source() + ") : copie complète");
+            }
+            clear();
+            source = revision.source();
+        }
+
+        // le texte avant les commits qui le référencent
+        copyText(revision, primary);
+        for (IndexRevision.Commit commit : revision.indexes()) {
+            copyCommit(indexes.get(commit.name()), commit, primary);
+        }
+        applied.addLast(revision);
+        while (applied.size() > IndexPublisher.KEEP) applied.removeFirst();
+        return true;
+    }
+
+    /**
+     * Supprime les fichiers étrangers aux dernières révisions appliquées ; à appeler après le refresh des readers
+     * (les readers plus anciens encore ouverts continuent de lire les fichiers supprimés).
+     */
+    public synchronized void prune() {
+        for (Map.Entry<String, Directory> e : indexes.entrySet()) {
+            Set<String> keep = new HashSet<>();
+            for (IndexRevision revision : applied) {
+                for (IndexRevision.Commit commit : revision.indexes()) {
+                    if (commit.name().equals(e.getKey())) keep.addAll(commit.files().keySet());
+                }
+            }
+            try {
+                for (String file : e.getValue().listAll()) {
+                    if (!keep.contains(file)) delete(e.getValue(), file);
+                }
+            } catch (IOException ex) {
+                System.err.println("[Replica] nettoyage de " + e.getKey() + " échoué: " + ex.getMessage());
+            }
+        }
+        Set<String> texts = new HashSet<>();
+        for (IndexRevision revision : applied) texts.add(revision.textFile());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(textDir, "pagetext-*.dat")) {
+            for (Path f : files) {
+                if (!texts.contains(f.getFileName().toString())) Files.deleteIfExists(f);
+            }
+        } catch (IOException e) {
+            System.err.println("[Replica] nettoyage du texte des pages échoué: " + e.getMessage());
+        }
+    }
+
+    /** Dernière révision appliquée (null avant la première synchronisation). */
+    public synchronized IndexRevision applied() {
+        return applied.peekLast();
+    }
+
+    /** Octets reçus du primaire depuis le démarrage. */
+    public long bytesCopied() {
+        return bytesCopied.get();
+    }
+
+    private void copyText(IndexRevision revision, Source primary) throws IOException {
+        Files.createDirectories(textDir);
+        Path file = textDir.resolve(revision.textFile());
+        long have = Files.exists(file) ? Files.size(file) : 0;
+        if (have >= revision.textLength()) return;
+        try (InputStream in = primary.text(revision.textFile(), have);
+             FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = have;
+            byte[] buffer = new byte[COPY_BUFFER];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) position += out.write(chunk, position);
+            }
+            out.force(false);
+            bytesCopied.addAndGet(position - have);
+            // ce qui a été reçu est un préfixe exact : la copie reprendra de là
+            if (position < revision.textLength()) {
+                throw new IOException("texte des pages incomplet: " + position + "/" + revision.textLength());
+            }
+        }
+    }
+
+    private void copyCommit(Directory dir, IndexRevision.Commit commit, Source primary) throws IOException {
+        Set<String> local = new HashSet<>(Arrays.asList(dir.listAll()));
+        if (local.contains(commit.segments())) return;
+        List<String> copied = new ArrayList<>();
+        for (Map.Entry<String, Long> e : commit.files().entrySet()) {
+            String name = e.getKey();
+            if (name.equals(commit.segments())) continue;
+            if (local.contains(name)) {
+                if (dir.fileLength(name) == e.getValue()) continue; // fichiers de segments immuables
+                dir.deleteFile(name); // reste d'une copie interrompue
+            }
+            copy(primary.file(commit.name(), name), dir, name, e.getValue());
+            copied.add(name);
+        }
+        dir.sync(copied);
+
+        String pending = PENDING_PREFIX + commit.segments();
+        if (local.contains(pending)) dir.deleteFile(pending);
+        copy(primary.file(commit.name(), commit.segments()), dir, pending, commit.files().get(commit.segments()));
+        dir.sync(List.of(pending));
+        dir.rename(pending, commit.segments());
+        dir.syncMetaData();
+    }
+
+    private void copy(InputStream stream, Directory dir, String name, long expected) throws IOException {
+        long copied = 0;
+        try (InputStream in = stream; IndexOutput out = dir.createOutput(name, IOContext.DEFAULT)) {
+            byte[] buffer = new byte[COPY_BUFFER];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.writeBytes(buffer, 0, n);
+                copied += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(dir, name);
+            throw e;
+        }
+        bytesCopied.addAndGet(copied);
+        if (copied != expected) {
+            delete(dir, name);
+            throw new IOException("copie incomplète de " + name + ": " + copied + "/" + expected + " octets");
+        }
+    }
+
+    /** Index du primaire recréé : les noms de fichiers ne désignent plus les mêmes contenus. */
+    private void clear() throws IOException {
+        for (Directory dir : indexes.values()) {
+            for (String file : dir.listAll()) delete(dir, file);
+        }
+        if (Files.isDirectory(textDir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(textDir, "pagetext-*.dat")) {
+                for (Path f : files) Files.deleteIfExists(f);
+            }
+        }
+        textStore.reopen();
+        applied.clear();
+    }
+
+    private static void delete(Directory dir, String file) {
+        try {
+            dir.deleteFile(file);
+        } catch (IOException e) {
+            // encore ouvert (Windows) : supprimé à un prochain nettoyage
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package pdf.archi_web;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * État publié de l'index d'un nœud primaire : le dernier commit de chaque index Lucene (shards, suggestions)
+ * avec la liste de ses fichiers, et la longueur du fichier de texte des pages à cet instant.
+ * Les fichiers de segments ne sont jamais réécrits : une réplique ne copie que ceux qui lui manquent.
+ *
+ * @param source    identifiant de l'index du primaire ({@link #ID_KEY}) : s'il change, tout est recopié
+ * @param version   numéro de publication, croissant tant que le primaire tourne
+ * @param published date de publication (ms depuis l'epoch, horloge du primaire)
+ * @param indexes   un commit par index, shards d'abord (dans l'ordre des numéros)
+ * @param textFile  fichier de texte des pages de la génération référencée par les commits
+ * @param textLength octets de ce fichier couvrant tous les pointeurs des commits
+ */
+public record IndexRevision(String source, long version, long published, List<Commit> indexes,
+                            String textFile, long textLength) {
+
+    /** Clé des données utilisateur des commits : identifiant attribué à la création de l'index. */
+    public static final String ID_KEY = "index.id";
+
+    /**
+     * @param name     nom de l'index (shard-N ou suggest)
+     * @param segments fichier segments_N du commit, copié en dernier
+     * @param files    fichiers du commit et leur taille
+     */
+    public record Commit(String name, String segments, Map<String, Long> files) {}
+
+    /** Même contenu, à la version près (rien à copier). */
+    public boolean sameContent(IndexRevision other) {
+        return other != null && source.equals(other.source) && indexes.equals(other.indexes)
+                && textFile.equals(other.textFile) && textLength == other.textLength;
+    }
+}
@@ -0,0 +1,48 @@
+package pdf.archi_web;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Découpage de l'index en shards : un index Lucene par sous-dossier (index.dir/shard-0, shard-1...),
+ * chaque PDF dans le shard désigné par le hash de son nom. Toutes les pages d'un fichier sont dans le même
+ * shard : remplacement et suppression par nom ne touchent qu'un writer.
+ */
+public final class IndexShards {
+
+    private static final String PREFIX = "shard-";
+
+    private IndexShards() {
+    }
+
+    /** Shard d'un fichier ; stable tant que le nombre de shards ne change pas (sinon : réindexation complète). */
+    public static int shardOf(String filename, int shards) {
+        return Math.floorMod(filename.hashCode(), shards);
+    }
+
+    public static Path path(Path indexDir, int shard) {
+        return indexDir.resolve(name(shard));
+    }
+
+    /** Nom du sous-dossier d'un shard (et de son index dans la réplication). */
+    public static String name(int shard) {
+        return PREFIX + shard;
+    }
+
+    /** Dossiers de shards présents sous l'index, dans l'ordre des numéros. */
+    public static List<Path> list(Path indexDir) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(indexDir, PREFIX + "*")) {
+            for (Path dir : dirs) {
+                if (Files.isDirectory(dir)) shards.add(dir);
+            }
+        }
+        shards.sort(Comparator.comparingInt(p -> Integer.parseInt(p.getFileName().toString().substring(PREFIX.length()))));
+        return shards;
+    }
+}
@@ -0,0 +1,68 @@
+package pdf.archi_web;
+
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Implémentation du {@link Directory} de l'index, choisie par configuration (index.store).
+ */
+public enum IndexStorage {
+
+    /** Fichiers mappés en mémoire : le cache du système sert les lectures ; préchargement optionnel par extension. */
+    MMAP,
+    /** Lectures positionnelles par FileChannel : pas de mapping (espace d'adressage limité, conteneurs contraints). */
+    NIO,
+    /** Index entièrement en mémoire (ByteBuffersDirectory), reconstruit à chaque démarrage : petits corpus. */
+    MEMORY;
+
+    public static IndexStorage parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("index.store inconnu: " + value + " (mmap, nio ou memory)");
+        }
+    }
+
+    /** L'index et son manifeste survivent à un redémarrage. */
+    public boolean isPersistent() {
+        return this != MEMORY;
+    }
+
+    /**
+     * @param preload extensions des fichiers à charger en mémoire dès l'ouverture (MMAP ; "*" : tous)
+     * @param offHeap MEMORY : blocs alloués hors du tas (ByteBuffer direct) plutôt que dans le tas
+     */
+    public Directory open(Path path, Set<String> preload, boolean offHeap) throws IOException {
+        return switch (this) {
+            case MMAP -> {
+                MMapDirectory dir = new MMapDirectory(path);
+                if (!preload.isEmpty()) {
+                    dir.setPreload((file, context) -> preload.contains("*") || preload.contains(extension(file)));
+                }
+                yield dir;
+            }
+            case NIO -> new NIOFSDirectory(path);
+            case MEMORY -> offHeap
+                    ? new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+                    () -> new ByteBuffersDataOutput(ByteBuffersDataOutput.DEFAULT_MIN_BITS_PER_BLOCK,
+                            ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+                            ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+                    ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS)
+                    : new ByteBuffersDirectory();
+        };
+    }
+
+    private static String extension(String file) {
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? "" : file.substring(dot + 1);
+    }
+}
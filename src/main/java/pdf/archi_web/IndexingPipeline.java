@@ -0,0 +1,272 @@
+package pdf.archi_web;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pipeline d'indexation en deux étages :
+ * <ol>
+ *   <li>extraction PDFBox en parallèle, par fichier puis par tranche de pages (chaque tranche ouvre
+ *       sa propre copie du PDF, PDDocument n'étant pas thread-safe) ;</li>
+ *   <li>une file bornée de documents Lucene vidée par quelques threads d'écriture dans le writer du shard
+ *       de chaque fichier (cf. {@link IndexShards}).</li>
+ * </ol>
+ * La file bornée fait patienter les extracteurs quand l'écriture ne suit pas, et les PDF ne s'ouvrent que
+ * dans la limite d'un budget d'octets ({@link PdfMemoryBudget}) : mémoire maîtrisée même avec de très gros fichiers.
+ * Une fois toutes ses pages écrites, les suggestions récoltées sur le fichier sont ajoutées au {@link Suggester}.
+ */
+public class IndexingPipeline implements Closeable {
+
+    private record PageDoc(FileJob job, Document doc) {}
+
+    private static final PageDoc POISON = new PageDoc(null, null);
+
+    /** Suivi d'un fichier : terminé quand toutes ses pages sont dans le writer de son shard. */
+    private static final class FileJob {
+        final Path path;
+        final IndexWriter writer;
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger();
+        final Suggester.Harvest harvest = new Suggester.Harvest();
+        // écritures de pages partagées entre writers, échec exclusif : aucune page ajoutée après le delete de fail()
+        final ReadWriteLock writes = new ReentrantReadWriteLock();
+        volatile int pages;
+
+        FileJob(Path path, IndexWriter writer) {
+            this.path = path;
+            this.writer = writer;
+        }
+
+        void pageWritten() {
+            if (remaining.decrementAndGet() == 0) done.complete(pages);
+        }
+    }
+
+    private final IndexWriter[] writers;
+    private final PageTextStore textStore;
+    private final Suggester suggester;
+    private final int pagesPerTask;
+    private final int workers;
+    private final PdfMemoryBudget budget;
+    private final ExecutorService extractors;
+    private final BlockingQueue<PageDoc> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+    private final ScheduledExecutorService reporter;
+
+    private final AtomicInteger activeFiles = new AtomicInteger();
+    private final AtomicLong pagesExtracted = new AtomicLong();
+    private final AtomicLong pagesAtLastReport = new AtomicLong();
+    private volatile long lastReportNanos = System.nanoTime();
+
+    /**
+     * @param shardWriters un writer par shard, partagés (ouverts, commités et fermés par l'appelant)
+     * @param budget       octets de PDF ouverts à la fois et mémoire de flux par document
+     */
+    public IndexingPipeline(IndexWriter[] shardWriters, PageTextStore textStore, Suggester suggester, PdfMemoryBudget budget,
+                            int workers, int writers, int queueCapacity, int pagesPerTask, long reportIntervalMs) {
+        this.writers = shardWriters;
+        this.textStore = textStore;
+        this.suggester = suggester;
+        this.budget = budget;
+        this.workers = workers;
+        this.pagesPerTask = pagesPerTask;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        AtomicInteger n = new AtomicInteger();
+        this.extractors = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "pdf-extract-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (int i = 1; i <= writers; i++) {
+            Thread t = new Thread(this::drain, "index-writer-" + i);
+            t.setDaemon(true);
+            t.start();
+            writerThreads.add(t);
+        }
+
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "index-pipeline-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::report, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Soumet un PDF : ses anciennes pages sont supprimées puis les nouvelles ajoutées.
+     * @return future complétée avec le nombre de pages une fois toutes les pages écrites dans le writer
+     */
+    public CompletableFuture<Integer> submit(Path pdf) {
+        String filename = pdf.getFileName().toString();
+        FileJob job = new FileJob(pdf, writers[IndexShards.shardOf(filename, writers.length)]);
+        activeFiles.incrementAndGet();
+        job.done.whenComplete((pages, err) -> activeFiles.decrementAndGet());
+        // hors du thread d'écriture : les suggestions suivent l'indexation sans la retarder
+        job.done.thenRunAsync(() -> suggest(job), extractors);
+        extractors.execute(() -> openFile(job));
+        return job.done;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public long pagesExtracted() {
+        return pagesExtracted.get();
+    }
+
+    public long openPdfBytes() {
+        return budget.openBytes();
+    }
+
+    public int pdfsWaiting() {
+        return budget.waiting();
+    }
+
+    /**
+     * Premier étage : ouvre le fichier (dans la limite du budget), planifie les tranches et extrait la première
+     * avec le document déjà chargé. Un fichier trop gros pour être ouvert en une copie par extracteur
+     * est extrait d'un seul tenant, page après page.
+     */
+    private void openFile(FileJob job) {
+        File file = job.path.toFile();
+        String filename = file.getName();
+        try (PdfMemoryBudget.Lease lease = budget.open(file)) {
+            PDDocument document = lease.document();
+            int pages = document.getNumberOfPages();
+            job.pages = pages;
+            job.remaining.set(pages);
+
+            // avant toute page de ce fichier : un delete ne touche que les documents ajoutés avant lui
+            job.writer.deleteDocuments(new Term("filename", filename));
+            if (pages == 0) {
+                job.done.complete(0);
+                return;
+            }
+
+            int first = budget.fits(file.length(), workers) ? pagesPerTask : pages;
+            for (int from = 1 + first; from <= pages; from += pagesPerTask) {
+                int start = from;
+                int end = Math.min(pages, from + pagesPerTask - 1);
+                extractors.execute(() -> extractRange(job, start, end));
+            }
+            PdfIndexer.extractPages(document, filename, 1, Math.min(pages, first), textStore, page -> enqueue(job, page));
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    /** Tranche suivante : copie indépendante du PDF pour extraire en parallèle des autres tranches. */
+    private void extractRange(FileJob job, int from, int to) {
+        if (job.done.isDone()) return; // fichier déjà en échec
+        File file = job.path.toFile();
+        try (PdfMemoryBudget.Lease lease = budget.open(file)) {
+            PdfIndexer.extractPages(lease.document(), file.getName(), from, to, textStore, page -> enqueue(job, page));
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    private void enqueue(FileJob job, Document page) throws InterruptedException {
+        pagesExtracted.incrementAndGet();
+        job.harvest.addPage(page.getField("content").stringValue());
+        queue.put(new PageDoc(job, page)); // bloque si les writers ne suivent pas
+    }
+
+    /** Second étage : écrit les documents extraits dans le writer de leur shard. */
+    private void drain() {
+        while (true) {
+            PageDoc item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (item == POISON) return;
+            FileJob job = item.job();
+            Exception error = null;
+            job.writes.readLock().lock();
+            try {
+                if (job.done.isCompletedExceptionally()) continue; // fichier en échec : on jette ses pages
+                job.writer.addDocument(item.doc());
+                job.pageWritten();
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                job.writes.readLock().unlock();
+            }
+            if (error != null) fail(job, error);
+        }
+    }
+
+    private void suggest(FileJob job) {
+        try {
+            suggester.add(job.harvest);
+        } catch (Exception e) {
+            // l'index est à jour, seules les suggestions de ce fichier manquent
+            System.err.println("[Suggest] ajout échoué pour " + job.path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private void fail(FileJob job, Exception e) {
+        if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+        // attend les pages en cours d'ajout : celles qui suivent voient l'échec et sont jetées
+        job.writes.writeLock().lock();
+        try {
+            if (job.done.completeExceptionally(e)) {
+                // pas d'index partiel : les pages déjà écrites de ce fichier sont retirées
+                try {
+                    job.writer.deleteDocuments(new Term("filename", job.path.getFileName().toString()));
+                } catch (IOException ignored) {
+                    // le writer est probablement fermé
+                }
+            }
+        } finally {
+            job.writes.writeLock().unlock();
+        }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long total = pagesExtracted.get();
+        long delta = total - pagesAtLastReport.getAndSet(total);
+        double seconds = (now - lastReportNanos) / 1_000_000_000.0;
+        lastReportNanos = now;
+        if (delta == 0 && activeFiles.get() == 0) return; // pipeline au repos : rien à signaler
+        System.out.printf("[Pipeline] %d pages extraites (%.1f pages/s), file d'attente: %d, fichiers en cours: %d%n",
+                total, delta / seconds, queue.size(), activeFiles.get());
+    }
+
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+        extractors.shutdownNow();
+        try {
+            // les writers finissent de vider la file avant de rencontrer la pilule
+            for (int i = 0; i < writerThreads.size(); i++) {
+                queue.offer(POISON, 5, TimeUnit.SECONDS);
+            }
+            for (Thread t : writerThreads) {
+                t.join(5_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package pdf.archi_web;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Table des lignes d'une page, calculée à l'indexation et stockée avec la page :
+ * pour chaque ligne, son offset de début/fin dans le texte et ses numéros de paragraphe et de ligne.
+ * <p>
+ * Même découpage que l'ancien code de recherche : paragraphes séparés par "\n\n", lignes par "\n",
+ * numéros de ligne recommençant à 1 dans chaque paragraphe.
+ */
+public final class LineTable {
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] paragraphs;
+    private final int[] lines;
+    private final int size;
+
+    private LineTable(int[] starts, int[] ends, int[] paragraphs, int[] lines, int size) {
+        this.starts = starts;
+        this.ends = ends;
+        this.paragraphs = paragraphs;
+        this.lines = lines;
+        this.size = size;
+    }
+
+    public static LineTable build(String text) {
+        int capacity = 16;
+        int[] starts = new int[capacity], ends = new int[capacity], paragraphs = new int[capacity], lines = new int[capacity];
+        int n = 0;
+
+        int paragraph = 1;
+        int pos = 0;
+        int length = text.length();
+        while (pos <= length) {
+            int paragraphEnd = text.indexOf("\n\n", pos);
+            if (paragraphEnd < 0) paragraphEnd = length;
+
+            int line = 1;
+            int lineStart = pos;
+            while (lineStart <= paragraphEnd) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd < 0 || lineEnd > paragraphEnd) lineEnd = paragraphEnd;
+                if (n == starts.length) {
+                    capacity = ArrayUtil.oversize(n + 1, Integer.BYTES);
+                    starts = ArrayUtil.growExact(starts, capacity);
+                    ends = ArrayUtil.growExact(ends, capacity);
+                    paragraphs = ArrayUtil.growExact(paragraphs, capacity);
+                    lines = ArrayUtil.growExact(lines, capacity);
+                }
+                starts[n] = lineStart;
+                ends[n] = lineEnd;
+                paragraphs[n] = paragraph;
+                lines[n] = line++;
+                n++;
+                lineStart = lineEnd + 1;
+            }
+            paragraph++;
+            pos = paragraphEnd + 2;
+        }
+        return new LineTable(starts, ends, paragraphs, lines, n);
+    }
+
+    /**
+     * Encodage compact (vInt en deltas) : quelques octets par ligne.
+     */
+    public byte[] encode() {
+        byte[] buf = new byte[5 + size * 15];
+        ByteArrayDataOutput out = new ByteArrayDataOutput(buf);
+        try {
+            out.writeVInt(size);
+            int prevEnd = 0;
+            int prevParagraph = 1;
+            for (int i = 0; i < size; i++) {
+                out.writeVInt(starts[i] - prevEnd);
+                out.writeVInt(ends[i] - starts[i]);
+                out.writeVInt(paragraphs[i] - prevParagraph);
+                prevEnd = ends[i];
+                prevParagraph = paragraphs[i];
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // impossible : écriture dans un tableau en mémoire
+        }
+        return ArrayUtil.copyOfSubArray(buf, 0, out.getPosition());
+    }
+
+    public static LineTable decode(BytesRef bytes) {
+        ByteArrayDataInput in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+        int n = in.readVInt();
+        int[] starts = new int[n], ends = new int[n], paragraphs = new int[n], lines = new int[n];
+        int prevEnd = 0;
+        int paragraph = 1;
+        int line = 0;
+        for (int i = 0; i < n; i++) {
+            starts[i] = prevEnd + in.readVInt();
+            ends[i] = starts[i] + in.readVInt();
+            int paragraphDelta = in.readVInt();
+            paragraph += paragraphDelta;
+            line = paragraphDelta == 0 ? line + 1 : 1;
+            paragraphs[i] = paragraph;
+            lines[i] = line;
+            prevEnd = ends[i];
+        }
+        return new LineTable(starts, ends, paragraphs, lines, n);
+    }
+
+    /**
+     * Index de la ligne contenant l'offset (recherche dichotomique).
+     */
+    public int lineAt(int offset) {
+        int lo = 0, hi = size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public int size() { return size; }
+    public int start(int i) { return starts[i]; }
+    public int end(int i) { return ends[i]; }
+    public int paragraph(int i) { return paragraphs[i]; }
+    public int line(int i) { return lines[i]; }
+}
@@ -0,0 +1,361 @@
+package pdf.archi_web;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.compress.LZ4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Texte des pages hors de l'index Lucene : fichier en ajout seul, par blocs compressés (LZ4) de quelques pages,
+ * lu par mapping mémoire. Chaque document Lucene porte un pointeur (doc value "text") vers sa page ;
+ * seules les pages qui produisent un résultat sont décompressées, l'index ne garde que postings et doc values.
+ * <p>
+ * Pointeur : génération (16 bits) | position du bloc (40 bits) | rang de la page dans le bloc (8 bits).
+ * Une réindexation complète ({@link #reset()}) ouvre une nouvelle génération ; l'ancienne reste lisible
+ * par les readers en cours et son fichier est supprimé après le commit suivant ({@link #dropRetired()}) ;
+ * le fichier reste ouvert et mappé jusqu'au commit d'après, puis il est fermé.
+ * La génération en service est enregistrée dans les données du commit Lucene ({@link #COMMIT_KEY}).
+ * <p>
+ * Les pages remplacées ou supprimées restent dans le fichier jusqu'à la prochaine réindexation complète.
+ */
+public class PageTextStore implements Closeable {
+
+    /** Clé des données utilisateur du commit Lucene portant la génération courante. */
+    public static final String COMMIT_KEY = "pagetext.gen";
+
+    /** Un bloc est compressé dès qu'il atteint cette taille (octets non compressés) ou MAX_PAGES_PER_BLOCK pages. */
+    public static final int BLOCK_BYTES = 32 * 1024;
+    public static final int MAX_PAGES_PER_BLOCK = 64;
+
+    // Régions mappées : un bloc ne chevauche jamais deux régions (bourrage avant la frontière)
+    static final int REGION_BITS = 28; // 256 Mo
+    private static final int HEADER_BYTES = 8; // longueur non compressée + longueur compressée
+
+    /** Texte et structure de lignes d'une page. */
+    public record Page(String text, LineTable lines) {}
+
+    private final Path dir;
+    private final boolean writable;
+    private final int regionBits;
+    private final Map<Integer, Generation> generations = new ConcurrentHashMap<>();
+    private final List<Generation> retired = new ArrayList<>();
+    // Fichiers supprimés au dernier commit, encore ouverts pour les readers d'avant ce commit
+    private final List<Generation> dropped = new ArrayList<>();
+    private volatile Generation current;
+
+    /**
+     * @param generation génération enregistrée au dernier commit (0 si aucun) : les autres fichiers sont obsolètes
+     */
+    public PageTextStore(Path dir, int generation) throws IOException {
+        this(dir, generation, true, REGION_BITS);
+    }
+
+    /** Régions de 2^regionBits octets (tests : frontières de région franchies avec peu de données). */
+    PageTextStore(Path dir, int generation, int regionBits) throws IOException {
+        this(dir, generation, true, regionBits);
+    }
+
+    private PageTextStore(Path dir, int generation, boolean writable, int regionBits) throws IOException {
+        this.dir = dir;
+        this.writable = writable;
+        this.regionBits = regionBits;
+        if (writable) {
+            Files.createDirectories(dir);
+            // restes d'une réindexation interrompue ou d'une génération retirée non supprimée (Windows)
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "pagetext-*.dat")) {
+                for (Path f : files) {
+                    if (!f.equals(file(generation))) Files.deleteIfExists(f);
+                }
+            }
+            this.current = open(generation);
+        }
+    }
+
+    /**
+     * Lecture seule d'un store écrit par un autre processus (usage autonome de {@link PdfSearcher}, réplique) :
+     * chaque génération est ouverte à sa première lecture, et suivie quand son fichier grandit.
+     */
+    public static PageTextStore readOnly(Path dir) throws IOException {
+        return new PageTextStore(dir, 0, false, REGION_BITS);
+    }
+
+    /**
+     * Génération enregistrée dans les données d'un commit Lucene (0 pour un index sans commit ou antérieur au store).
+     */
+    public static int generation(Map<String, String> commitData) {
+        String gen = commitData == null ? null : commitData.get(COMMIT_KEY);
+        return gen == null ? 0 : Integer.parseInt(gen);
+    }
+
+    public int generation() {
+        return current.id;
+    }
+
+    /**
+     * Écrit les pages en un bloc compressé.
+     *
+     * @return le pointeur de chaque page, à stocker dans son document Lucene
+     */
+    public long[] append(List<String> texts, List<LineTable> lines) throws IOException {
+        if (texts.size() > MAX_PAGES_PER_BLOCK) throw new IllegalArgumentException("bloc trop grand: " + texts.size());
+        // bloc brut : nombre de pages, début de chaque page, puis [taille table | table | texte UTF-8] par page
+        List<byte[]> tables = new ArrayList<>(texts.size());
+        List<byte[]> utf8 = new ArrayList<>(texts.size());
+        int rawLength = 4 + 4 * (texts.size() + 1);
+        for (int i = 0; i < texts.size(); i++) {
+            tables.add(lines.get(i).encode());
+            utf8.add(texts.get(i).getBytes(StandardCharsets.UTF_8));
+            rawLength += 4 + tables.get(i).length + utf8.get(i).length;
+        }
+        ByteBuffer raw = ByteBuffer.allocate(rawLength).order(ByteOrder.LITTLE_ENDIAN);
+        raw.putInt(texts.size());
+        int offset = 4 + 4 * (texts.size() + 1);
+        for (int i = 0; i < texts.size(); i++) {
+            raw.putInt(offset);
+            offset += 4 + tables.get(i).length + utf8.get(i).length;
+        }
+        raw.putInt(offset);
+        for (int i = 0; i < texts.size(); i++) {
+            raw.putInt(tables.get(i).length).put(tables.get(i)).put(utf8.get(i));
+        }
+
+        byte[] compressed = new byte[HEADER_BYTES + rawLength + rawLength / 255 + 16];
+        ByteArrayDataOutput out = new ByteArrayDataOutput(compressed, HEADER_BYTES, compressed.length - HEADER_BYTES);
+        LZ4.compress(raw.array(), 0, rawLength, out, new LZ4.FastCompressionHashTable());
+        int length = out.getPosition();
+        ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(0, rawLength)
+                .putInt(4, length - HEADER_BYTES);
+
+        Generation gen = current;
+        long position = gen.write(ByteBuffer.wrap(compressed, 0, length));
+        long[] pointers = new long[texts.size()];
+        for (int i = 0; i < pointers.length; i++) {
+            pointers[i] = ((long) gen.id << 48) | (position << 8) | i;
+        }
+        return pointers;
+    }
+
+    /**
+     * Décompresse le bloc de la page et n'en décode que cette page.
+     */
+    public Page read(long pointer) throws IOException {
+        Generation gen = generation((int) (pointer >>> 48));
+        long position = (pointer >>> 8) & ((1L << 40) - 1);
+        int slot = (int) (pointer & 0xFF);
+
+        ByteBuffer block = gen.block(position);
+        int rawLength = block.getInt(0);
+        int compressedLength = block.getInt(4);
+        byte[] compressed = new byte[compressedLength];
+        block.get(HEADER_BYTES, compressed);
+        byte[] raw = new byte[rawLength];
+        LZ4.decompress(new ByteArrayDataInput(compressed), rawLength, raw, 0);
+
+        ByteBuffer in = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        int start = in.getInt(4 + 4 * slot);
+        int end = in.getInt(4 + 4 * (slot + 1));
+        int tableLength = in.getInt(start);
+        LineTable lines = LineTable.decode(new BytesRef(raw, start + 4, tableLength));
+        int textStart = start + 4 + tableLength;
+        return new Page(new String(raw, textStart, end - textStart, StandardCharsets.UTF_8), lines);
+    }
+
+    /**
+     * Rend durables les blocs écrits : à appeler avant le commit Lucene qui les référence.
+     */
+    public void sync() throws IOException {
+        current.channel.force(false);
+    }
+
+    /**
+     * Réindexation complète : les pages suivantes vont dans une nouvelle génération.
+     */
+    public synchronized void reset() throws IOException {
+        Generation old = current;
+        current = open(old.id + 1 & 0xFFFF);
+        retired.add(old);
+    }
+
+    /**
+     * Après un commit qui ne référence plus les générations retirées : suppression de leurs fichiers.
+     * Les readers encore ouverts continuent de les lire (fichier ouvert et mappé) jusqu'au commit suivant :
+     * les générations supprimées au commit précédent, que plus aucun reader ne référence, sont alors fermées
+     * (descripteur, régions mappées, place disque).
+     */
+    public synchronized void dropRetired() {
+        for (Generation gen : dropped) {
+            generations.remove(gen.id, gen);
+            try {
+                gen.close();
+                Files.deleteIfExists(gen.path); // suppression refusée tant qu'il était mappé (Windows)
+            } catch (IOException e) {
+                System.err.println("[PageText] fermeture de " + gen.path.getFileName() + " échouée: " + e.getMessage());
+            }
+        }
+        dropped.clear();
+        for (Generation gen : retired) {
+            try {
+                Files.deleteIfExists(gen.path);
+            } catch (IOException e) {
+                // fichier encore mappé (Windows) : supprimé au prochain démarrage
+                System.err.println("[PageText] suppression différée de " + gen.path.getFileName() + ": " + e.getMessage());
+            }
+            dropped.add(gen);
+        }
+        retired.clear();
+    }
+
+    /**
+     * Réplique : les fichiers ont été remplacés (index du primaire recréé), les générations sont rouvertes
+     * à leur prochaine lecture. Les blocs déjà mappés restent lisibles par les readers en cours.
+     */
+    public synchronized void reopen() throws IOException {
+        if (writable) throw new IllegalStateException("store en écriture");
+        for (Generation gen : generations.values()) {
+            gen.channel.close();
+        }
+        generations.clear();
+        current = null;
+    }
+
+    /** Taille des fichiers de la génération courante (en lecture seule : la dernière lue). */
+    public long sizeBytes() {
+        Generation gen = current;
+        return gen == null ? 0 : gen.size;
+    }
+
+    /** Génération ouverte (tests : descripteur rendu après {@link #dropRetired()}). */
+    boolean isOpen(int generation) {
+        Generation gen = generations.get(generation);
+        return gen != null && gen.channel.isOpen();
+    }
+
+    /** Nom du fichier d'une génération (identique sur le primaire et ses répliques). */
+    public static String fileName(int generation) {
+        return "pagetext-" + generation + ".dat";
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Generation gen : generations.values()) {
+            gen.channel.close();
+        }
+    }
+
+    private Path file(int generation) {
+        return dir.resolve(fileName(generation));
+    }
+
+    private Generation generation(int id) throws IOException {
+        Generation gen = generations.get(id);
+        if (gen != null) return gen;
+        if (writable) throw new IOException("génération de texte inconnue: " + id);
+        synchronized (this) {
+            gen = generations.get(id);
+            if (gen == null) {
+                if (!Files.exists(file(id))) throw new IOException("génération de texte inconnue: " + id);
+                gen = open(id);
+                current = gen;
+            }
+            return gen;
+        }
+    }
+
+    private Generation open(int id) throws IOException {
+        Generation gen = new Generation(id, file(id), writable, regionBits);
+        generations.put(id, gen);
+        return gen;
+    }
+
+    /** Un fichier de blocs, écrit en ajout seul et lu par régions mappées. */
+    private static final class Generation {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final int regionBits;
+        final long regionSize;
+        volatile long size;
+        // Régions mappées, remplacées (copie du tableau) quand le fichier grandit : lecture sans verrou
+        private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+        Generation(int id, Path path, boolean writable, int regionBits) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.regionBits = regionBits;
+            this.regionSize = 1L << regionBits;
+            this.channel = writable
+                    ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        synchronized long write(ByteBuffer block) throws IOException {
+            long position = size;
+            long regionEnd = (position >>> regionBits) + 1 << regionBits;
+            if (position + block.remaining() > regionEnd) {
+                if (block.remaining() > regionSize) throw new IOException("bloc de texte trop grand: " + block.remaining());
+                position = regionEnd; // bourrage jusqu'à la région suivante
+            }
+            for (long p = position; block.hasRemaining(); ) {
+                p += channel.write(block, p);
+            }
+            size = channel.size();
+            return position;
+        }
+
+        /** Les régions sont démappées par le GC une fois la dernière lecture en cours terminée. */
+        void close() throws IOException {
+            regions = new MappedByteBuffer[0];
+            channel.close();
+        }
+
+        /** Vue en lecture seule commençant au bloc ; la région est remappée si le fichier a grandi depuis. */
+        ByteBuffer block(long position) throws IOException {
+            int region = (int) (position >>> regionBits);
+            int offset = (int) (position & (regionSize - 1));
+            MappedByteBuffer map = region(region, offset + HEADER_BYTES);
+            int length = HEADER_BYTES + map.getInt(offset + 4);
+            if (offset + length > map.limit()) map = region(region, offset + length);
+            return map.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private MappedByteBuffer region(int region, int needed) throws IOException {
+            MappedByteBuffer[] maps = regions;
+            if (region < maps.length && maps[region] != null && maps[region].limit() >= needed) return maps[region];
+            return remap(region, needed);
+        }
+
+        private synchronized MappedByteBuffer remap(int region, int needed) throws IOException {
+            MappedByteBuffer[] maps = regions;
+            if (region < maps.length && maps[region] != null && maps[region].limit() >= needed) return maps[region];
+            long start = (long) region << regionBits;
+            long length = Math.min(regionSize, channel.size() - start);
+            if (length < needed) throw new IOException("bloc de texte hors du fichier: " + (start + needed));
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            size = Math.max(size, start + length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            MappedByteBuffer[] next = Arrays.copyOf(maps, Math.max(maps.length, region + 1));
+            next[region] = map;
+            regions = next;
+            return map;
+        }
+    }
+}
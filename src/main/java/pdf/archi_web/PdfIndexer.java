@@ -3,44 +3,114 @@ package pdf.archi_web;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.Loader;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
-import org.apache.lucene.store.*;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PdfIndexer {
 
-    private final Directory indexDirectory;
-    private final StandardAnalyzer analyzer;
+    @FunctionalInterface
+    public interface PageConsumer {
+        void onPage(Document page) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Texte de la page : indexé (positions + offsets pour localiser les occurrences via l'API Matches)
+     * mais non stocké, le texte est dans le {@link PageTextStore}.
+     */
+    public static final FieldType CONTENT_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+    static {
+        CONTENT_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_TYPE.freeze();
+    }
 
-    public PdfIndexer(String indexPath) throws IOException {
-        this.indexDirectory = FSDirectory.open(new File(indexPath).toPath());
-        this.analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final PageTextStore textStore;
+
+    /**
+     * Le writer et le store sont partagés (cf. IndexingService) : PdfIndexer ne fait qu'y ajouter des pages,
+     * il ne les ouvre, ne les commit ni ne les ferme.
+     */
+    public PdfIndexer(IndexWriter writer, PageTextStore textStore) {
+        this.writer = writer;
+        this.textStore = textStore;
     }
 
-    public void indexPdf(String pdfPath) throws IOException {
+    /**
+     * Indexe une page par document Lucene, séquentiellement (cf. IndexingPipeline pour la version parallèle).
+     * Les documents déjà indexés sous le même nom sont remplacés : réindexer un fichier modifié
+     * ne crée pas de doublons.
+     * @return nombre de documents ajoutés
+     */
+    public int indexPdf(String pdfPath) throws IOException {
         File file = new File(pdfPath);
-        try (PDDocument document = Loader.loadPDF(file)) {
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-            try (IndexWriter writer = new IndexWriter(indexDirectory, config)) {
-                PDFTextStripper stripper = new PDFTextStripper();
-                int pages = document.getNumberOfPages();
-                for (int i = 1; i <= pages; i++) {
-                    stripper.setStartPage(i);
-                    stripper.setEndPage(i);
-                    String text = stripper.getText(document);
-
-                    Document doc = new Document();
-                    doc.add(new StringField("filename", file.getName(), Field.Store.YES));
-                    doc.add(new StringField("page", String.valueOf(i), Field.Store.YES));
-                    doc.add(new TextField("content", text, Field.Store.YES));
-
-                    writer.addDocument(doc);
+        try (PDDocument document = Loader.loadPDF(file, PdfMemoryBudget.streamCache(PdfMemoryBudget.DEFAULT_SCRATCH_BYTES))) {
+            // un delete ne s'applique qu'aux documents ajoutés avant lui : les pages ci-dessous sont conservées
+            deleteFile(file.getName());
+
+            int pages = document.getNumberOfPages();
+            extractPages(document, file.getName(), 1, pages, textStore, writer::addDocument);
+            return pages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexation interrompue: " + pdfPath, e);
+        }
+    }
+
+    public void deleteFile(String filename) throws IOException {
+        writer.deleteDocuments(new Term("filename", filename));
+    }
+
+    /**
+     * Extrait les pages [from, to] (incluses), écrit leur texte par blocs dans le store
+     * et transmet un document Lucene par page. Seul un bloc de texte est retenu en mémoire à la fois.
+     * PDDocument et PDFTextStripper ne sont pas thread-safe : un appel par thread et par document.
+     */
+    public static void extractPages(PDDocument document, String filename, int from, int to,
+                                    PageTextStore textStore, PageConsumer consumer)
+            throws IOException, InterruptedException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        List<String> texts = new ArrayList<>();
+        List<LineTable> lines = new ArrayList<>();
+        int blockBytes = 0;
+        int first = from;
+        for (int i = from; i <= to; i++) {
+            stripper.setStartPage(i);
+            stripper.setEndPage(i);
+            String text = stripper.getText(document);
+            texts.add(text);
+            // structure paragraphes/lignes calculée une fois ici, plus de split à chaque requête
+            lines.add(LineTable.build(text));
+            blockBytes += text.length();
+            if (blockBytes >= PageTextStore.BLOCK_BYTES || texts.size() == PageTextStore.MAX_PAGES_PER_BLOCK || i == to) {
+                long[] pointers = textStore.append(texts, lines);
+                for (int k = 0; k < texts.size(); k++) {
+                    consumer.onPage(pageDocument(filename, first + k, texts.get(k), pointers[k]));
                 }
+                texts.clear();
+                lines.clear();
+                blockBytes = 0;
+                first = i + 1;
             }
         }
     }
+
+    /**
+     * Document Lucene d'une page : termes du texte, nom du fichier (terme pour les suppressions),
+     * et doc values pour l'affichage (fichier, page, pointeur vers le texte).
+     */
+    public static Document pageDocument(String filename, int page, String text, long textPointer) {
+        Document doc = new Document();
+        doc.add(new StringField("filename", filename, Field.Store.NO));
+        doc.add(new SortedDocValuesField("filename", new BytesRef(filename)));
+        doc.add(new NumericDocValuesField("page", page));
+        doc.add(new Field("content", text, CONTENT_TYPE));
+        doc.add(new NumericDocValuesField("text", textPointer));
+        return doc;
+    }
 }
@@ -0,0 +1,108 @@
+package pdf.archi_web;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Mémoire d'extraction bornée : un PDF ouvert pèse à peu près sa taille sur disque (objets analysés,
+ * polices, flux décodés), on limite donc le total des octets de PDF ouverts en même temps. Au-delà,
+ * l'ouverture attend son tour (dans l'ordre d'arrivée) : un gros document patiente au lieu de saturer le tas.
+ * Un fichier plus gros que tout le budget s'ouvre seul.
+ * <p>
+ * Chaque document garde au plus {@code scratchMemoryBytes} de flux en mémoire, le reste va dans un fichier
+ * temporaire ({@link MemoryUsageSetting#setupMixed(long)}).
+ */
+public class PdfMemoryBudget {
+
+    /** Flux gardés en mémoire par document, par défaut (usage hors pipeline). */
+    public static final long DEFAULT_SCRATCH_BYTES = 16L << 20;
+
+    // permis en Ko : un Semaphore compte en int
+    private static final int UNIT = 1024;
+
+    private final long maxBytes;
+    private final Semaphore permits;
+    private final RandomAccessStreamCache.StreamCacheCreateFunction streamCache;
+
+    /**
+     * @param maxOpenBytes       octets de PDF ouverts à la fois (<= 0 : sans limite)
+     * @param scratchMemoryBytes flux en mémoire par document avant débordement sur disque
+     */
+    public PdfMemoryBudget(long maxOpenBytes, long scratchMemoryBytes) {
+        this.maxBytes = maxOpenBytes;
+        this.permits = maxOpenBytes > 0 ? new Semaphore(units(maxOpenBytes), true) : null;
+        this.streamCache = streamCache(scratchMemoryBytes);
+    }
+
+    /** Cache de flux PDFBox : mémoire bornée, puis fichier temporaire. */
+    public static RandomAccessStreamCache.StreamCacheCreateFunction streamCache(long scratchMemoryBytes) {
+        return MemoryUsageSetting.setupMixed(scratchMemoryBytes).streamCache;
+    }
+
+    /** Document ouvert et sa part du budget, rendue à la fermeture. */
+    public final class Lease implements Closeable {
+        private final PDDocument document;
+        private final int units;
+
+        private Lease(PDDocument document, int units) {
+            this.document = document;
+            this.units = units;
+        }
+
+        public PDDocument document() {
+            return document;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                document.close();
+            } finally {
+                if (permits != null) permits.release(units);
+            }
+        }
+    }
+
+    /**
+     * Ouvre le PDF dès que sa taille tient dans le budget (bloque jusque-là).
+     */
+    public Lease open(File file) throws IOException, InterruptedException {
+        int units = permits == null ? 0 : Math.min(units(file.length()), units(maxBytes));
+        if (permits != null) permits.acquire(units);
+        try {
+            return new Lease(Loader.loadPDF(file, streamCache), units);
+        } catch (IOException | RuntimeException e) {
+            if (permits != null) permits.release(units);
+            throw e;
+        }
+    }
+
+    /**
+     * Un fichier est extrait en tranches parallèles (une copie ouverte par tranche) seulement s'il tient
+     * {@code copies} fois dans le budget ; sinon d'un seul tenant.
+     */
+    public boolean fits(long fileBytes, int copies) {
+        return permits == null || fileBytes * copies <= maxBytes;
+    }
+
+    /** Octets de PDF actuellement ouverts (0 sans limite configurée). */
+    public long openBytes() {
+        return permits == null ? 0 : (long) (units(maxBytes) - permits.availablePermits()) * UNIT;
+    }
+
+    /** Ouvertures en attente de budget. */
+    public int waiting() {
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+
+    private static int units(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + UNIT - 1) / UNIT));
+    }
+}
@@ -1,9 +1,11 @@
 package pdf.archi_web;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
@@ -12,9 +14,8 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import pdf.archi_web.DTO.SearchResult;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 
 public class PdfSearcher {
@@ -24,66 +25,112 @@ public class PdfSearcher {
         void onResult(SearchResult result);
     }
 
-    private final Directory indexDirectory;
-    private final StandardAnalyzer analyzer;
+    private final ReferenceManager<IndexSearcher> searcherManager;
+    private final PageTextStore textStore;
+    // QueryParser n'est pas thread-safe : une instance réutilisée par thread
+    private final ThreadLocal<QueryParser> parsers;
 
+    /**
+     * Ouvre ses propres searchers sur les shards et le texte des pages en lecture seule (usage autonome, hors Spring).
+     */
     public PdfSearcher(String indexPath) throws Exception {
-        this.indexDirectory = FSDirectory.open(new File(indexPath).toPath());
-        this.analyzer = new StandardAnalyzer();
+        this(openStandalone(Path.of(indexPath)), new PdfAnalyzer(), PageTextStore.readOnly(Path.of(indexPath)));
+    }
+
+    /**
+     * Utilise un gestionnaire de searchers partagé : aucun reader n'est ouvert par requête.
+     */
+    public PdfSearcher(ReferenceManager<IndexSearcher> searcherManager, Analyzer analyzer, PageTextStore textStore) {
+        this.searcherManager = searcherManager;
+        this.textStore = textStore;
+        this.parsers = ThreadLocal.withInitial(() -> new QueryParser("content", analyzer));
+    }
+
+    private static ShardedSearcherManager openStandalone(Path indexPath) throws IOException {
+        List<Path> shards = IndexShards.list(indexPath);
+        Directory[] directories = new Directory[shards.size()];
+        for (int i = 0; i < directories.length; i++) {
+            directories[i] = FSDirectory.open(shards.get(i));
+        }
+        return new ShardedSearcherManager(directories, null);
     }
 
     /**
      * Recherche dans l'index et appelle le callback pour chaque résultat trouvé
      */
     public void search(String query, SearchResultCallback callback) throws IOException, ParseException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
-            QueryParser parser = new QueryParser("content", analyzer);
-            Query q = parser.parse(query);
-
-            // ⏱ Démarrage du timer
-            long start = System.nanoTime();
-
-            TopDocs docs = searcher.search(q, 100);
-            boolean firstResultFound = false;
-
-            for (ScoreDoc sd : docs.scoreDocs) {
-                Document d = searcher.doc(sd.doc);
-                String filename = d.get("filename");
-                int page = Integer.parseInt(d.get("page"));
-                String content = d.get("content");
-
-                // On découpe par paragraphe
-                String[] paragraphs = content.split("\\n\\n");
-                for (int p = 0; p < paragraphs.length; p++) {
-                    String paragraph = paragraphs[p];
-                    if (paragraph.toLowerCase().contains(query.toLowerCase())) {
-                        // Découpe le paragraphe en lignes
-                        String[] lines = paragraph.split("\\n");
-                        for (int l = 0; l < lines.length; l++) {
-                            if (lines[l].toLowerCase().contains(query.toLowerCase())) {
-
-                                // ⏱ Si c'est le premier résultat, on log le temps
-                                if (!firstResultFound) {
-                                    long elapsed = System.nanoTime() - start;
-                                    double elapsedMs = elapsed / 1_000_000.0;
-                                    System.out.println("⏱ Temps jusqu'au premier résultat : " + elapsedMs + " ms");
-                                    firstResultFound = true;
-                                }
-
-                                callback.onResult(new SearchResult(
-                                        filename,
-                                        page,
-                                        p + 1,
-                                        l + 1,
-                                        lines[l]
-                                ));
-                            }
-                        }
-                    }
-                }
-            }
+        Query q = parse(query);
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            search(searcher, q, callback);
+        } finally {
+            searcherManager.release(searcher);
         }
     }
-}
 
+    /**
+     * Requête analysée ; son toString() est une forme canonique (casse, accents, racines normalisés).
+     */
+    public Query parse(String query) throws ParseException {
+        return parsers.get().parse(query);
+    }
+
+    /**
+     * Recherche sur un searcher déjà emprunté par l'appelant (qui reste chargé de le rendre).
+     * Parcourt tous les résultats, page après page via {@link SearchCursor} (plus de plafond à 100 pages).
+     */
+    public void search(IndexSearcher searcher, Query q, SearchResultCallback callback) throws IOException {
+        // temps jusqu'au premier résultat : métrique search.first.result (SearchMetrics)
+        new SearchCursor(this, q).next(searcher, Integer.MAX_VALUE, callback);
+    }
+
+    /**
+     * Émet une ligne par ligne de la page {@code sd} contenant une occurrence de la requête.
+     * Localisation par les vraies occurrences (termes, phrases, formes racinisées...) via l'API Matches.
+     *
+     * @param weight poids de la requête réécrite, créé sur ce même searcher
+     * @return le nombre de résultats émis pour cette page
+     */
+    public int emitLines(IndexSearcher searcher, Weight weight, ScoreDoc sd, SearchResultCallback callback) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(sd.doc, leaves));
+        int doc = sd.doc - leaf.docBase;
+        Matches matches = weight.matches(leaf, doc);
+        MatchesIterator it = matches == null ? null : matches.getMatches("content");
+        if (it == null) return 0;
+
+        // Fichier, page et pointeur vers le texte en doc values : le texte n'est lu que pour les pages trouvées
+        SortedDocValues filenames = DocValues.getSorted(leaf.reader(), "filename");
+        NumericDocValues pages = DocValues.getNumeric(leaf.reader(), "page");
+        NumericDocValues pointers = DocValues.getNumeric(leaf.reader(), "text");
+        if (!filenames.advanceExact(doc) || !pages.advanceExact(doc) || !pointers.advanceExact(doc)) return 0;
+        String filename = filenames.lookupOrd(filenames.ordValue()).utf8ToString();
+        int page = (int) pages.longValue();
+        PageTextStore.Page text = textStore.read(pointers.longValue());
+        String content = text.text();
+        LineTable table = text.lines();
+
+        // Offsets des occurrences -> ligne par recherche dichotomique : coût proportionnel
+        // au nombre d'occurrences, pas à la taille de la page
+        int emitted = 0;
+        int lastLine = -1;
+        while (it.next()) {
+            int offset = it.startOffset();
+            if (offset < 0) continue; // offsets non indexés (ancien index)
+            int i = table.lineAt(offset);
+            if (i == lastLine) continue; // un résultat par ligne
+            lastLine = i;
+
+            callback.onResult(new SearchResult(
+                    filename,
+                    page,
+                    table.paragraph(i),
+                    table.line(i),
+                    content.substring(table.start(i), table.end(i))
+            ));
+            emitted++;
+        }
+        return emitted;
+    }
+}
@@ -0,0 +1,71 @@
+package pdf.archi_web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pdf.archi_web.DTO.SearchResult;
+
+import java.util.Map;
+
+/**
+ * Cache applicatif des résultats de recherche (Caffeine, éviction W-TinyLFU).
+ * Une entrée est le premier lot de résultats d'une requête et la position du curseur qui l'a produit,
+ * ce qui permet de poursuivre la pagination sans relire les premières pages.
+ * <p>
+ * Borné en octets estimés et non en nombre d'entrées : une requête large pèse bien plus qu'une requête rare.
+ * La clé contient la version du reader : dès qu'un commit/refresh change l'index, les anciennes entrées
+ * ne sont plus atteignables (et sont purgées par {@link #invalidateAll()}).
+ */
+@Component
+public class SearchCache {
+
+    /** Requête canonique (Query#toString après analyse) + version du reader qui a produit les résultats. */
+    public record Key(String query, long readerVersion) {}
+
+    private final Cache<Key, SearchCursor.Snapshot> cache;
+
+    public SearchCache(@Value("${search.cache.max-bytes:67108864}") long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key k, SearchCursor.Snapshot v) -> weigh(k, v))
+                .recordStats()
+                .build();
+    }
+
+    public SearchCursor.Snapshot get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(Key key, SearchCursor.Snapshot snapshot) {
+        cache.put(key, snapshot);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats s = cache.stats();
+        return Map.of(
+                "hits", s.hitCount(),
+                "misses", s.missCount(),
+                "hitRate", s.hitRate(),
+                "evictions", s.evictionCount(),
+                "entries", cache.estimatedSize(),
+                "bytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L)
+        );
+    }
+
+    /**
+     * Estimation grossière de l'empreinte mémoire : en-têtes d'objets + 2 octets par caractère.
+     */
+    private static int weigh(Key key, SearchCursor.Snapshot snapshot) {
+        long bytes = 64 + 2L * key.query().length();
+        for (SearchResult r : snapshot.results()) {
+            bytes += 96 + 2L * (r.getFilename().length() + r.getLineContent().length() + r.getUrl().length());
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+}
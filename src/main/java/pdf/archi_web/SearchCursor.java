@@ -0,0 +1,199 @@
+package pdf.archi_web;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+import pdf.archi_web.DTO.SearchResult;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Curseur de recherche paginé : les pages (documents Lucene) sont lues par lots avec
+ * {@link IndexSearcher#searchAfter}, et les lignes ne sont extraites qu'à la demande.
+ * <p>
+ * La mémoire reste bornée quel que soit le nombre de résultats : un lot de {@link ScoreDoc}
+ * plus les lignes restantes de la dernière page ouverte. Non thread-safe : un curseur par session,
+ * seul {@link #cancel()} peut être appelé depuis un autre thread.
+ */
+public class SearchCursor {
+
+    /** Taille par défaut d'un lot de pages lu par searchAfter. */
+    public static final int DEFAULT_DOCS_PER_FETCH = 32;
+
+    /**
+     * État reprenable du curseur, mis en cache avec la version du reader qui l'a produit.
+     *
+     * @param results   résultats déjà produits (émis ou en attente), dans l'ordre
+     * @param after     dernière page entièrement traitée (null si aucune)
+     * @param exhausted plus aucune page au-delà de {@code after}
+     */
+    public record Snapshot(List<SearchResult> results, ScoreDoc after, boolean exhausted) {}
+
+    private final PdfSearcher pdfSearcher;
+    private final Query query;
+    private final int docsPerFetch;
+
+    // Résultats extraits mais pas encore demandés par le client
+    private final ArrayDeque<SearchResult> pending = new ArrayDeque<>();
+    // Lot courant de pages et position dans ce lot
+    private ScoreDoc[] batch;
+    private int batchPos;
+    private ScoreDoc after;
+    private boolean noMoreDocs;
+    private int emitted;
+    private long luceneNanos;
+    private volatile boolean cancelled;
+
+    // Historique des résultats produits, tenu seulement si un snapshot est attendu (voir recordSnapshot)
+    private List<SearchResult> produced;
+
+    public SearchCursor(PdfSearcher pdfSearcher, Query query) {
+        this(pdfSearcher, query, DEFAULT_DOCS_PER_FETCH);
+    }
+
+    public SearchCursor(PdfSearcher pdfSearcher, Query query, int docsPerFetch) {
+        this.pdfSearcher = pdfSearcher;
+        this.query = query;
+        this.docsPerFetch = docsPerFetch;
+    }
+
+    /**
+     * Reprend un curseur depuis un snapshot (cache) : les résultats connus sont rejoués avant
+     * de poursuivre la lecture de l'index après {@code snapshot.after()}.
+     */
+    public SearchCursor(PdfSearcher pdfSearcher, Query query, int docsPerFetch, Snapshot snapshot) {
+        this(pdfSearcher, query, docsPerFetch);
+        pending.addAll(snapshot.results());
+        after = snapshot.after();
+        noMoreDocs = snapshot.exhausted();
+    }
+
+    /**
+     * Émet au plus {@code n} résultats, puis prépare le suivant pour que {@link #hasMore()} soit exact.
+     *
+     * @param searcher searcher de la même version de reader que les appels précédents (les doc ids en dépendent)
+     * @return le nombre de résultats émis
+     * @throws CancellationException si le curseur a été annulé pendant l'appel
+     */
+    public int next(IndexSearcher searcher, int n, PdfSearcher.SearchResultCallback callback) throws IOException {
+        Weight weight = null;
+        int sent = 0;
+        while (sent < n) {
+            checkCancelled();
+            SearchResult r = pending.poll();
+            if (r == null) {
+                if (weight == null) weight = weight(searcher);
+                if (!advance(searcher, weight)) break;
+                continue;
+            }
+            callback.onResult(r);
+            sent++;
+        }
+        // Une page à l'avance au plus : le client sait s'il y a une suite sans requête de plus
+        while (pending.isEmpty()) {
+            checkCancelled();
+            if (weight == null) weight = weight(searcher);
+            if (!advance(searcher, weight)) break;
+        }
+        emitted += sent;
+        return sent;
+    }
+
+    /**
+     * Le curseur poursuit sur un autre reader (ancienne version élaguée) : les doc ids du lot courant
+     * n'y sont plus valides, il sera relu par searchAfter depuis la dernière page traitée.
+     */
+    public void rebase() {
+        if (batch != null && batchPos < batch.length) noMoreDocs = false;
+        batch = null;
+        batchPos = 0;
+    }
+
+    /**
+     * Arrête le curseur au plus tard au résultat ou à la page suivante (appelable depuis n'importe quel thread).
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean hasMore() {
+        return !pending.isEmpty();
+    }
+
+    /** Temps cumulé passé dans Lucene (search/searchAfter), hors extraction des lignes. */
+    public long luceneNanos() {
+        return luceneNanos;
+    }
+
+    /** Nombre total de résultats émis depuis l'ouverture du curseur. */
+    public int emitted() {
+        return emitted;
+    }
+
+    /**
+     * Conserve les résultats produits pour un futur {@link #snapshot()}. À n'activer qu'avant une demande bornée.
+     */
+    public SearchCursor recordSnapshot() {
+        if (emitted == 0 && pending.isEmpty()) produced = new ArrayList<>();
+        return this;
+    }
+
+    /**
+     * État reprenable après le premier appel à {@link #next} (null si non enregistré ou déjà pris).
+     */
+    public Snapshot snapshot() {
+        if (produced == null) return null;
+        List<SearchResult> results = produced;
+        produced = null;
+        // Le reste du lot courant sera relu par searchAfter depuis la dernière page traitée
+        boolean exhausted = noMoreDocs && (batch == null || batchPos == batch.length);
+        return new Snapshot(List.copyOf(results), after, exhausted);
+    }
+
+    private void checkCancelled() {
+        if (cancelled) throw new CancellationException("recherche annulée");
+    }
+
+    private Weight weight(IndexSearcher searcher) throws IOException {
+        return searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    }
+
+    /**
+     * Ouvre la page suivante et place ses lignes dans {@code pending}.
+     *
+     * @return false s'il n'y a plus de page
+     */
+    private boolean advance(IndexSearcher searcher, Weight weight) throws IOException {
+        if (batch == null || batchPos == batch.length) {
+            if (noMoreDocs) return false;
+            Query q = weight.getQuery();
+            long start = System.nanoTime();
+            TopDocs docs = after == null
+                    ? searcher.search(q, docsPerFetch)
+                    : searcher.searchAfter(after, q, docsPerFetch);
+            luceneNanos += System.nanoTime() - start;
+            batch = docs.scoreDocs;
+            batchPos = 0;
+            noMoreDocs = batch.length < docsPerFetch;
+            if (batch.length == 0) return false;
+        }
+        ScoreDoc sd = batch[batchPos++];
+        pdfSearcher.emitLines(searcher, weight, sd, result -> {
+            pending.add(result);
+            if (produced != null) produced.add(result);
+        });
+        after = sd;
+        return true;
+    }
+}
@@ -5,25 +5,21 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
-import pdf.archi_web.PdfSearcher;
-import pdf.archi_web.DTO.SearchResult;
-//import pdf.archi_web.SearchCache;
+import pdf.archi_web.services.SearchProvider;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @Component
 public class SearchWarmup {
 
-    @Value("${index.dir:index}") 
-    private String indexDir;
+    private final SearchProvider searchProvider;
+    private final int pageSize;
 
-    // private final SearchCache searchCache;
-
-    // public SearchWarmup(SearchCache searchCache) {
-    //     this.searchCache = searchCache;
-    // }
+    public SearchWarmup(SearchProvider searchProvider, @Value("${search.page.size:100}") int pageSize) {
+        this.searchProvider = searchProvider;
+        this.pageSize = pageSize;
+    }
 
     @EventListener(ApplicationReadyEvent.class)
     public void warmOnStartup() {
@@ -31,17 +27,14 @@ public class SearchWarmup {
         CompletableFuture.runAsync(() -> {
             try {
                 System.out.println("[Warmup] starting…");
-                PdfSearcher s = new PdfSearcher(indexDir);
-
-                // 1) première requête “no-op” pour ouvrir le reader/analyzer/JIT
-                s.search("warmup", r -> { /* noop */ });
+                // 1) première requête “no-op” pour chauffer le reader partagé/analyzer/JIT
+                searchProvider.search("warmup", r -> { /* noop */ });
 
                 // 2) requêtes représentatives pour peupler caches Lucene + Caffeine
                 List<String> hotQueries = List.of("contrat", "lot", "avenant"); // adapte à ton domaine
                 for (String q : hotQueries) {
-                    List<SearchResult> tmp = new ArrayList<>();
-                    s.search(q, tmp::add);
-              //      searchCache.put(q, tmp); // optionnel: pré-remplit ton cache applicatif
+                    // premier lot seulement, comme une vraie recherche : c'est lui qui est mis en cache (SearchCache)
+                    searchProvider.next(searchProvider.open(q), pageSize, r -> { /* noop */ });
                 }
 
                 System.out.println("[Warmup] done.");
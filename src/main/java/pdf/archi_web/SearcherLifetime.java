@@ -0,0 +1,77 @@
+package pdf.archi_web;
+
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searchers retenus par version pour les recherches paginées, comme SearcherLifetimeManager de Lucene
+ * (qui ne connaît que les DirectoryReader) mais pour les searchers de {@link ShardedSearcherManager}.
+ */
+public class SearcherLifetime implements Closeable {
+
+    private record Tracked(IndexSearcher searcher, long recordedAt) {}
+
+    private final Map<Long, Tracked> searchers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Retient le searcher (référence en plus) s'il ne l'est pas déjà.
+     * @return sa version, à repasser à {@link #acquire(long)}
+     */
+    public long record(IndexSearcher searcher) throws IOException {
+        if (closed) throw new IllegalStateException("SearcherLifetime fermé");
+        long version = ShardedSearcherManager.version(searcher);
+        if (!searchers.containsKey(version)) {
+            searcher.getIndexReader().incRef();
+            if (searchers.putIfAbsent(version, new Tracked(searcher, System.nanoTime())) != null) {
+                searcher.getIndexReader().decRef();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * @return le searcher de cette version (à rendre via {@link #release}), null s'il a été élagué
+     */
+    public IndexSearcher acquire(long version) {
+        Tracked tracked = searchers.get(version);
+        return tracked != null && tracked.searcher().getIndexReader().tryIncRef() ? tracked.searcher() : null;
+    }
+
+    public void release(IndexSearcher searcher) throws IOException {
+        searcher.getIndexReader().decRef();
+    }
+
+    /**
+     * Oublie les searchers remplacés par une version plus récente depuis plus de {@code maxAgeSeconds}.
+     */
+    public synchronized void prune(double maxAgeSeconds) throws IOException {
+        List<Map.Entry<Long, Tracked>> byVersion = new ArrayList<>(searchers.entrySet());
+        byVersion.sort(Map.Entry.<Long, Tracked>comparingByKey(Comparator.reverseOrder()));
+        long now = System.nanoTime();
+        Long newerRecordedAt = null;
+        for (Map.Entry<Long, Tracked> e : byVersion) {
+            if (newerRecordedAt != null && (now - newerRecordedAt) / 1e9 > maxAgeSeconds) {
+                searchers.remove(e.getKey());
+                e.getValue().searcher().getIndexReader().decRef();
+            }
+            newerRecordedAt = e.getValue().recordedAt();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (Long version : List.copyOf(searchers.keySet())) {
+            Tracked tracked = searchers.remove(version);
+            if (tracked != null) tracked.searcher().getIndexReader().decRef();
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package pdf.archi_web.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.DTO.UploadSessionStatus;
+import pdf.archi_web.services.IndexingService;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload reprenable par morceaux, pour les gros PDF : le fichier est réservé à sa taille finale dans le dossier
+ * de stockage, chaque morceau y est écrit directement à sa position (ni tampon multipart, ni copie temporaire),
+ * dans n'importe quel ordre et avec sa propre empreinte SHA-256. Un morceau interrompu ou corrompu se renvoie seul.
+ * <p>
+ * Une fois tous les morceaux reçus, le fichier est confié tel quel à {@link UploadService#storeReserved}
+ * (doublons, nom définitif, indexation). L'empreinte du fichier entier est calculée au fil des morceaux reçus
+ * dans l'ordre ; un morceau arrivé en avance est relu depuis le fichier quand son tour vient.
+ * <p>
+ * Les sessions vivent en mémoire : un redémarrage du serveur les abandonne (fichiers partiels supprimés).
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final String PART_PREFIX = ".upload-";
+    private static final String PART_SUFFIX = ".part";
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    /** Trop de sessions ouvertes : le client doit réessayer plus tard. */
+    public static class TooManySessionsException extends RuntimeException {
+        public TooManySessionsException() {
+            super("Trop d'uploads en cours, réessayez plus tard.");
+        }
+    }
+
+    /** Session inconnue, expirée, terminée ou abandonnée. */
+    public static class UnknownSessionException extends RuntimeException {
+        public UnknownSessionException(String sessionId) {
+            super("Session d'upload inconnue ou expirée : " + sessionId);
+        }
+    }
+
+    private static class Session {
+        final String id;
+        final String filename;
+        final String user;
+        final long size;
+        final int chunkSize;
+        final int chunks;
+        final Path part;
+        final FileChannel channel;
+        final BitSet received = new BitSet();
+        final BitSet writing = new BitSet();
+        // empreinte du fichier entier sur les morceaux [0, hashed) ; prise par un seul écrivain à la fois
+        MessageDigest digest;
+        int hashed;
+        boolean digestBusy;
+        boolean closed;
+        volatile Instant lastAccess = Instant.now();
+
+        Session(String id, String filename, String user, long size, int chunkSize, Path part, FileChannel channel) {
+            this.id = id;
+            this.filename = filename;
+            this.user = user;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunks = (int) ((size + chunkSize - 1) / chunkSize);
+            this.part = part;
+            this.channel = channel;
+            this.digest = sha256();
+        }
+
+        long offset(int index) {
+            return (long) index * chunkSize;
+        }
+
+        int length(int index) {
+            return (int) Math.min(chunkSize, size - offset(index));
+        }
+    }
+
+    private final UploadService uploadService;
+    private final UploadJobService jobs;
+    private final IndexingService indexingService;
+    private final Path storageDir;
+    private final int defaultChunkSize;
+    private final int maxChunkSize;
+    private final long maxFileSize;
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService purger;
+
+    public ChunkedUploadService(UploadService uploadService,
+                                UploadJobService jobs,
+                                IndexingService indexingService,
+                                @Value("${upload.chunked.chunk-size-mb:8}") int chunkSizeMb,
+                                @Value("${upload.chunked.max-chunk-size-mb:64}") int maxChunkSizeMb,
+                                @Value("${upload.chunked.max-file-mb:2048}") long maxFileMb,
+                                @Value("${upload.chunked.max-sessions:32}") int maxSessions,
+                                @Value("${upload.chunked.idle-minutes:60}") long idleMinutes) throws IOException {
+        this.uploadService = uploadService;
+        this.jobs = jobs;
+        this.indexingService = indexingService;
+        this.storageDir = uploadService.getStorageDir();
+        this.maxChunkSize = maxChunkSizeMb << 20;
+        this.defaultChunkSize = Math.min(chunkSizeMb << 20, maxChunkSize);
+        this.maxFileSize = maxFileMb << 20;
+        this.maxSessions = maxSessions;
+        this.idleTimeout = Duration.ofMinutes(idleMinutes);
+
+        // sessions d'une exécution précédente : perdues avec la mémoire du serveur
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(storageDir, PART_PREFIX + "*" + PART_SUFFIX)) {
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+                System.out.println("[ChunkedUpload] fichier partiel abandonné supprimé : " + part.getFileName());
+            }
+        }
+
+        // sans nouvel upload, une session abandonnée garderait son fichier partiel et sa place disque
+        this.purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chunked-upload-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        purger.scheduleWithFixedDelay(this::purgeIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Ouvre une session : le fichier est créé à sa taille finale dans le dossier de stockage.
+     *
+     * @param chunkSize taille des morceaux en octets (<= 0 : upload.chunked.chunk-size-mb)
+     * @throws IllegalArgumentException nom, taille ou taille de morceau invalide, ou disque insuffisant
+     * @throws TooManySessionsException si upload.chunked.max-sessions sessions sont déjà ouvertes
+     * @throws IndexingService.ReadOnlyException sur une réplique
+     */
+    public UploadSessionStatus start(String filename, long size, int chunkSize, String user) throws IOException {
+        if (indexingService.isReplica()) {
+            throw new IndexingService.ReadOnlyException();
+        }
+        String baseName = UploadService.safeName(filename);
+        if (size <= 0) {
+            throw new IllegalArgumentException("Fichier vide.");
+        }
+        if (size > maxFileSize) {
+            throw new IllegalArgumentException("Fichier trop volumineux (max " + (maxFileSize >> 20) + " Mo).");
+        }
+        if (chunkSize <= 0) chunkSize = defaultChunkSize;
+        if (chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("Morceaux trop gros (max " + (maxChunkSize >> 20) + " Mo).");
+        }
+        if ((size + chunkSize - 1) / chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Morceaux trop petits pour ce fichier.");
+        }
+
+        purgeIdle();
+        // la place est réservée pour le fichier entier : un upload ne doit pas échouer disque plein au dernier morceau
+        long reserved;
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) {
+                throw new TooManySessionsException();
+            }
+            reserved = sessions.values().stream().mapToLong(s -> s.size).sum();
+            if (Files.getFileStore(storageDir).getUsableSpace() - reserved < size) {
+                throw new IllegalArgumentException("Espace disque insuffisant pour " + size + " octets.");
+            }
+
+            String id = UUID.randomUUID().toString();
+            Path part = storageDir.resolve(PART_PREFIX + id + PART_SUFFIX);
+            // fichier à sa taille finale : chaque morceau s'écrit à sa position, sans déplacer les autres
+            try (RandomAccessFile raf = new RandomAccessFile(part.toFile(), "rw")) {
+                raf.setLength(size);
+            }
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                Files.deleteIfExists(part);
+                throw e;
+            }
+            Session session = new Session(id, baseName, user, size, chunkSize, part, channel);
+            sessions.put(id, session);
+            System.out.println("[ChunkedUpload] session " + id + " : " + baseName + ", " + size + " octets en "
+                    + session.chunks + " morceaux de " + chunkSize);
+            return status(session);
+        }
+    }
+
+    /**
+     * Écrit un morceau à sa position dans le fichier, directement depuis le corps de la requête.
+     * Un morceau déjà reçu n'est pas réécrit (renvoi après une réponse perdue).
+     *
+     * @param sha256 empreinte SHA-256 attendue du morceau (hexadécimal)
+     * @throws IllegalArgumentException index hors limites, longueur ou empreinte différente (le morceau est à renvoyer)
+     * @throws IllegalStateException    si le même morceau est en cours d'écriture par une autre requête
+     */
+    public UploadSessionStatus writeChunk(String sessionId, int index, String sha256, InputStream body) throws IOException {
+        Session session = get(sessionId);
+        if (index < 0 || index >= session.chunks) {
+            throw new IllegalArgumentException("Morceau " + index + " hors limites (0.." + (session.chunks - 1) + ").");
+        }
+        byte[] expected = parseSha256(sha256);
+
+        MessageDigest whole;
+        synchronized (session) {
+            if (session.closed) throw new UnknownSessionException(sessionId);
+            if (session.received.get(index)) return status(session);
+            if (session.writing.get(index)) {
+                throw new IllegalStateException("Morceau " + index + " déjà en cours d'envoi.");
+            }
+            session.writing.set(index);
+            // morceau attendu par l'empreinte du fichier entier : calculée au passage, sans relecture
+            whole = null;
+            if (index == session.hashed && !session.digestBusy) {
+                session.digestBusy = true;
+                whole = clone(session.digest);
+            }
+        }
+
+        boolean ok = false;
+        try {
+            MessageDigest chunk = sha256();
+            long position = session.offset(index);
+            int length = session.length(index);
+            long written = 0;
+            byte[] buffer = new byte[COPY_BUFFER];
+            for (int n; (n = body.read(buffer)) > 0; ) {
+                if (written + n > length) {
+                    throw new IllegalArgumentException("Morceau " + index + " trop long (" + length + " octets attendus).");
+                }
+                chunk.update(buffer, 0, n);
+                if (whole != null) whole.update(buffer, 0, n);
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, n);
+                while (bytes.hasRemaining()) {
+                    written += session.channel.write(bytes, position + written);
+                }
+            }
+            if (written != length) {
+                throw new IllegalArgumentException("Morceau " + index + " incomplet : " + written + "/" + length + " octets.");
+            }
+            if (!MessageDigest.isEqual(chunk.digest(), expected)) {
+                throw new IllegalArgumentException("Empreinte SHA-256 du morceau " + index + " différente, à renvoyer.");
+            }
+            ok = true;
+        } catch (ClosedChannelException e) {
+            throw new UnknownSessionException(sessionId); // abandonnée ou expirée pendant l'envoi
+        } finally {
+            synchronized (session) {
+                session.writing.clear(index);
+                if (whole != null) {
+                    if (ok) {
+                        session.digest = whole;
+                        session.hashed = index + 1;
+                    }
+                    session.digestBusy = false;
+                }
+                if (ok) session.received.set(index);
+                session.lastAccess = Instant.now();
+                session.notifyAll(); // complete() attend l'empreinte
+            }
+        }
+
+        catchUpDigest(session);
+        synchronized (session) {
+            return status(session);
+        }
+    }
+
+    public UploadSessionStatus status(String sessionId) {
+        Session session = get(sessionId);
+        synchronized (session) {
+            return status(session);
+        }
+    }
+
+    /** Utilisateur qui a ouvert la session (journal d'audit). */
+    public String user(String sessionId) {
+        return get(sessionId).user;
+    }
+
+    /**
+     * Termine l'upload : le fichier complet est confié à l'indexation comme un upload direct.
+     *
+     * @throws IllegalStateException si des morceaux manquent (la session reste ouverte)
+     * @throws UploadJobService.QueueFullException si la file d'indexation est pleine (la session reste ouverte)
+     */
+    public UploadService.UploadResult complete(String sessionId) throws Exception {
+        Session session = get(sessionId);
+        String sha256;
+        synchronized (session) {
+            if (session.closed) throw new UnknownSessionException(sessionId);
+            if (session.received.cardinality() < session.chunks) {
+                throw new IllegalStateException((session.chunks - session.received.cardinality())
+                        + " morceau(x) manquant(s), cf. missing.");
+            }
+        }
+        // tous les morceaux sont là : reste au plus à relire ceux arrivés en avance
+        catchUpDigest(session);
+        synchronized (session) {
+            while (session.digestBusy && !session.closed) {
+                session.wait(); // relecture en cours sur le thread d'un autre morceau
+            }
+            if (session.closed) throw new UnknownSessionException(sessionId);
+            if (session.hashed < session.chunks) {
+                throw new IllegalStateException("Empreinte du fichier incomplète, réessayez.");
+            }
+            // place réservée avant de fermer : file pleine, la session reste utilisable pour réessayer
+            jobs.reserve();
+            session.closed = true;
+            sessions.remove(session.id);
+            sha256 = HexFormat.of().formatHex(session.digest.digest());
+        }
+
+        try {
+            session.channel.force(true);
+            session.channel.close();
+        } catch (IOException e) {
+            jobs.cancelReservation();
+            Files.deleteIfExists(session.part);
+            throw e;
+        }
+        System.out.println("[ChunkedUpload] session " + session.id + " complète : " + session.filename);
+        return uploadService.storeReserved(session.part, session.filename, sha256, session.user);
+    }
+
+    /** Abandonne la session et supprime le fichier partiel. */
+    public void abort(String sessionId) throws IOException {
+        Session session = get(sessionId);
+        synchronized (session) {
+            if (session.closed) throw new UnknownSessionException(sessionId);
+            discard(session);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        purger.shutdownNow();
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                if (!session.closed) discard(session);
+            }
+        }
+    }
+
+    private Session get(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) throw new UnknownSessionException(sessionId);
+        session.lastAccess = Instant.now();
+        return session;
+    }
+
+    /**
+     * Sessions sans nouvelles depuis upload.chunked.idle-minutes : abandonnées, fichier partiel et place disque
+     * libérés. Appelé chaque minute et à l'ouverture d'une session.
+     */
+    void purgeIdle() {
+        Instant limit = Instant.now().minus(idleTimeout);
+        for (Session session : sessions.values()) {
+            if (session.lastAccess.isAfter(limit)) continue;
+            synchronized (session) {
+                if (session.closed || !session.writing.isEmpty()) continue;
+                System.out.println("[ChunkedUpload] session " + session.id + " expirée : " + session.filename);
+                discard(session);
+            }
+        }
+    }
+
+    // appelé sous le verrou de la session
+    private void discard(Session session) {
+        session.closed = true;
+        sessions.remove(session.id);
+        session.notifyAll();
+        try {
+            session.channel.close();
+            Files.deleteIfExists(session.part);
+        } catch (IOException e) {
+            System.err.println("[ChunkedUpload] suppression de " + session.part.getFileName() + " échouée: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Étend l'empreinte du fichier entier sur les morceaux reçus en avance, relus depuis le fichier (encore en cache
+     * disque). La relecture se fait hors du verrou de la session, sur une copie de l'empreinte publiée à la fin :
+     * status(), les autres morceaux et complete() ne l'attendent pas. Une lecture échouée laisse l'empreinte
+     * intacte : complete() relance la relecture.
+     */
+    private void catchUpDigest(Session session) {
+        while (true) {
+            MessageDigest digest;
+            int from;
+            int to;
+            synchronized (session) {
+                if (session.closed || session.digestBusy) return; // l'autre thread poursuivra
+                from = session.hashed;
+                to = from;
+                while (to < session.chunks && session.received.get(to)) to++;
+                if (to == from) return;
+                session.digestBusy = true;
+                digest = clone(session.digest);
+            }
+
+            boolean ok = false;
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+                long position = session.offset(from);
+                long end = session.offset(to - 1) + session.length(to - 1);
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(COPY_BUFFER, end - position));
+                    int n = session.channel.read(buffer, position);
+                    if (n < 0) throw new IOException("fichier partiel tronqué: " + session.part.getFileName());
+                    digest.update(buffer.array(), 0, n);
+                    position += n;
+                }
+                ok = true;
+            } catch (ClosedChannelException e) {
+                return; // session abandonnée ou expirée entre-temps
+            } catch (IOException e) {
+                System.err.println("[ChunkedUpload] relecture de " + session.part.getFileName() + " échouée: " + e.getMessage());
+                return;
+            } finally {
+                synchronized (session) {
+                    if (ok) {
+                        session.digest = digest;
+                        session.hashed = to;
+                    }
+                    session.digestBusy = false;
+                    session.notifyAll();
+                }
+            }
+            // des morceaux ont pu arriver pendant la relecture : on reprend s'ils suivent
+        }
+    }
+
+    private static UploadSessionStatus status(Session session) {
+        List<Integer> missing = new ArrayList<>(session.chunks - session.received.cardinality());
+        for (int i = session.received.nextClearBit(0); i < session.chunks; i = session.received.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        return new UploadSessionStatus(session.id, session.filename, session.size, session.chunkSize, session.chunks,
+                session.received.cardinality(), missing);
+    }
+
+    private static byte[] parseSha256(String hex) {
+        try {
+            byte[] bytes = HexFormat.of().parseHex(hex == null ? "" : hex.trim());
+            if (bytes.length == 32) return bytes;
+        } catch (IllegalArgumentException e) {
+            // message commun ci-dessous
+        }
+        throw new IllegalArgumentException("En-tête X-Chunk-Sha256 invalide (64 caractères hexadécimaux attendus).");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest clone(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+// src/main/java/pdf/archi_web/Service/UploadJobService.java
+package pdf.archi_web.Service;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.services.AuditLogService;
+import pdf.archi_web.services.IndexingService;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Indexation des uploads en arrière-plan : la requête HTTP rend la main dès que les octets sont sur disque.
+ * Le nombre d'indexations en attente est borné ; au-delà, l'upload est refusé (HTTP 429) avant d'être stocké.
+ */
+@Service
+public class UploadJobService {
+
+    public static final String UPLOADS_TOPIC = "/topic/uploads";
+
+    public enum Status { QUEUED, INDEXED, FAILED }
+
+    /** File d'indexation pleine : le client doit réessayer plus tard. */
+    public static class QueueFullException extends RuntimeException {
+        public QueueFullException() {
+            super("File d'indexation pleine, réessayez plus tard.");
+        }
+    }
+
+    @Getter
+    public static class UploadJob {
+        private final String jobId;
+        private final String filename;
+        private final String url;
+        private final Instant createdAt = Instant.now();
+        private volatile Status status = Status.QUEUED;
+        private volatile int pages;
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        UploadJob(String jobId, String filename, String url) {
+            this.jobId = jobId;
+            this.filename = filename;
+            this.url = url;
+        }
+    }
+
+    private final IndexingService indexingService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AuditLogService audit;
+    private final Semaphore slots;
+    private final Duration retention;
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    // Jobs en cours par contenu (sha256) : un doublon envoyé pendant l'indexation suit le même job
+    private final Map<String, UploadJob> inFlight = new ConcurrentHashMap<>();
+
+    public UploadJobService(IndexingService indexingService,
+                            SimpMessagingTemplate messagingTemplate,
+                            AuditLogService audit,
+                            @Value("${upload.index.queue-capacity:8}") int queueCapacity,
+                            @Value("${upload.jobs.retention-minutes:60}") long retentionMinutes) {
+        this.indexingService = indexingService;
+        this.messagingTemplate = messagingTemplate;
+        this.audit = audit;
+        this.slots = new Semaphore(queueCapacity);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    /**
+     * Réserve une place dans la file, à appeler avant de stocker le fichier.
+     * @throws QueueFullException si toutes les places sont prises
+     */
+    public void reserve() {
+        if (!slots.tryAcquire()) {
+            throw new QueueFullException();
+        }
+    }
+
+    /** Libère une place réservée qui ne donnera pas lieu à un job (échec du stockage). */
+    public void cancelReservation() {
+        slots.release();
+    }
+
+    /**
+     * Lance l'indexation d'un fichier déjà stocké ; la place réservée est rendue à la fin du job.
+     */
+    public UploadJob submit(Path stored, String url, String user, String sha256) {
+        purgeFinished();
+        String filename = stored.getFileName().toString();
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), filename, url);
+        jobs.put(job.jobId, job);
+        inFlight.put(sha256, job);
+
+        indexingService.submit(stored, sha256).whenComplete((pages, err) -> {
+            try {
+                if (err == null) {
+                    indexingService.refresh(); // NRT : cherchable sans attendre le commit groupé
+                    job.pages = pages;
+                    job.status = Status.INDEXED;
+                } else {
+                    Throwable cause = err.getCause() != null ? err.getCause() : err;
+                    job.error = cause.getMessage();
+                    job.status = Status.FAILED;
+                    audit.logUploadError(user, filename, "indexation: " + cause.getMessage());
+                }
+            } catch (Exception e) {
+                job.error = e.getMessage();
+                job.status = Status.FAILED;
+            } finally {
+                job.finishedAt = Instant.now();
+                inFlight.remove(sha256, job);
+                slots.release();
+                System.out.println("[Upload] Indexation " + job.status + ": " + filename);
+                messagingTemplate.convertAndSend(UPLOADS_TOPIC, job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Job d'indexation en cours pour ce contenu, s'il y en a un.
+     */
+    public Optional<UploadJob> inProgress(String sha256) {
+        return Optional.ofNullable(inFlight.get(sha256));
+    }
+
+    /**
+     * Contenu déjà indexé : pas de nouvelle extraction, le job est terminé d'emblée et désigne le fichier existant.
+     * La place réservée est rendue.
+     */
+    public UploadJob completeDuplicate(String filename, String url, int pages) {
+        purgeFinished();
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), filename, url);
+        job.pages = pages;
+        job.status = Status.INDEXED;
+        job.finishedAt = Instant.now();
+        jobs.put(job.jobId, job);
+        System.out.println("[Upload] Doublon de " + filename + " : index existant réutilisé");
+        messagingTemplate.convertAndSend(UPLOADS_TOPIC, job);
+        slots.release();
+        return job;
+    }
+
+    public Optional<UploadJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void purgeFinished() {
+        Instant limit = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(limit));
+    }
+}
@@ -4,9 +4,17 @@ package pdf.archi_web.Service;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import pdf.archi_web.PdfIndexer;
+import pdf.archi_web.services.IndexingService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -14,16 +22,20 @@ public class UploadService {
 
     private final Path storageDir;       // dossier public servi par Spring: /pdf/*
     private final Path frontPublicDir;   // (optionnel) dossier public du front: front/public/pdf
-    private final PdfIndexer indexer;
+    private final UploadJobService jobs;
+    private final IndexingService indexingService;
 
     public UploadService(
             @Value("${PDF_STORAGE_DIR:/app/pdf}") String storageDirProp,
-            @Value("${FRONT_PUBLIC_DIR:}") String frontPublicDirProp
+            @Value("${FRONT_PUBLIC_DIR:}") String frontPublicDirProp,
+            UploadJobService jobs,
+            IndexingService indexingService
     ) throws Exception {
         this.storageDir = Path.of(storageDirProp).toAbsolutePath().normalize();
         Files.createDirectories(this.storageDir);
 
-        this.indexer = new PdfIndexer("index");
+        this.jobs = jobs;
+        this.indexingService = indexingService;
 
         if (frontPublicDirProp == null || frontPublicDirProp.isBlank()) {
             this.frontPublicDir = null;
@@ -33,13 +45,50 @@ public class UploadService {
         }
     }
 
-    public UploadResult storeAndIndex(MultipartFile file) throws Exception {
+    /**
+     * Stocke le PDF puis confie son indexation à la file d'arrière-plan ; rend la main sans attendre l'extraction.
+     * Un contenu identique à un PDF déjà indexé (ou en cours d'indexation) n'est ni stocké ni réextrait :
+     * la réponse désigne le fichier existant.
+     * @throws UploadJobService.QueueFullException si la file d'indexation est pleine (rien n'est stocké)
+     * @throws IndexingService.ReadOnlyException sur une réplique (rien n'est stocké)
+     */
+    public UploadResult storeAndIndex(MultipartFile file, String user) throws Exception {
+        if (indexingService.isReplica()) {
+            throw new IndexingService.ReadOnlyException();
+        }
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("Fichier vide.");
         }
+        String baseName = safeName(file.getOriginalFilename());
+
+        // place dans la file d'indexation réservée avant d'écrire quoi que ce soit
+        jobs.reserve();
+        Path tmp;
+        String sha256;
+        try {
+            // --- Écriture côté back en un seul passage : octets copiés et empreinte SHA-256 calculée ensemble ---
+            tmp = Files.createTempFile(storageDir, ".upload-", ".tmp");
+        } catch (Exception e) {
+            jobs.cancelReservation();
+            throw e;
+        }
+        try {
+            sha256 = copyAndHash(file, tmp);
+        } catch (Exception e) {
+            jobs.cancelReservation();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return storeReserved(tmp, baseName, sha256, user);
+    }
 
+    /**
+     * Nom de stockage d'un PDF envoyé : sans chemin ni caractères spéciaux.
+     * @throws IllegalArgumentException si l'extension n'est pas .pdf
+     */
+    public static String safeName(String original) {
         // --- Sécurisation & nommage ---
-        String original = file.getOriginalFilename() == null ? "document.pdf" : file.getOriginalFilename();
+        if (original == null || original.isBlank()) original = "document.pdf";
         // retire tout chemin éventuel, ne garde que le nom
         String baseName = Paths.get(original).getFileName().toString();
 
@@ -49,42 +98,118 @@ public class UploadService {
         }
 
         // évite caractères spéciaux / noms exotiques
-        baseName = baseName.replaceAll("[\\\\/:*?\"<>|]+", "_");
-
-        // si le fichier existe déjà, suffixer pour éviter l'écrasement
-        Path target = storageDir.resolve(baseName).normalize();
-        if (Files.exists(target)) {
-            String stem = baseName.substring(0, baseName.length() - 4);
-            baseName = stem + "-" + UUID.randomUUID().toString().substring(0, 8) + ".pdf";
-            target = storageDir.resolve(baseName).normalize();
+        return baseName.replaceAll("[\\\\/:*?\"<>|]+", "_");
+    }
+
+    /** Dossier de stockage des PDF (les fichiers en cours d'écriture y sont créés, pour un déplacement atomique). */
+    public Path getStorageDir() {
+        return storageDir;
+    }
+
+    /**
+     * Fichier déjà écrit dans le dossier de stockage (upload direct ou par morceaux), place dans la file déjà réservée :
+     * doublon, ou placement sous son nom définitif puis indexation. Le fichier écrit est consommé dans tous les cas,
+     * la place est rendue en cas d'échec.
+     */
+    public UploadResult storeReserved(Path tmp, String baseName, String sha256, String user) throws Exception {
+        try {
+            Path indexed;
+            Path target = null;
+            UploadJobService.UploadJob job = null;
+            // contrôle des doublons et choix du nom seulement : deux uploads ne doivent pas s'y croiser, mais la
+            // copie vers le front et le comptage des pages d'un doublon se font hors du verrou
+            synchronized (this) {
+                // --- Contenu identique déjà indexé ou en cours d'indexation : rien à stocker ni à extraire ---
+                Optional<UploadJobService.UploadJob> running = jobs.inProgress(sha256);
+                if (running.isPresent()) {
+                    jobs.cancelReservation();
+                    UploadJobService.UploadJob existing = running.get();
+                    System.out.println("[Upload] Doublon de " + existing.getFilename() + " (indexation en cours)");
+                    return new UploadResult(existing.getFilename(), existing.getUrl(),
+                            storageDir.resolve(existing.getFilename()).toString(),
+                            existing.getJobId(), existing.getStatus().name(), true);
+                }
+                indexed = indexingService.findIndexed(sha256).orElse(null);
+                if (indexed == null) {
+                    // si le nom existe déjà (autre contenu), suffixer pour éviter l'écrasement
+                    target = storageDir.resolve(baseName).normalize();
+                    if (Files.exists(target)) {
+                        String stem = baseName.substring(0, baseName.length() - 4);
+                        baseName = stem + "-" + UUID.randomUUID().toString().substring(0, 8) + ".pdf";
+                        target = storageDir.resolve(baseName).normalize();
+                    }
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    System.out.println("[Upload] Sauvé back: " + target);
+
+                    // --- Indexation en arrière-plan (statut via /api/upload/jobs/{id} et /topic/uploads) ---
+                    // enregistrée sous le verrou : un envoi du même contenu la trouve via jobs.inProgress
+                    job = jobs.submit(target, "/pdf/" + baseName, user, sha256);
+                }
+            }
+
+            if (indexed != null) {
+                String existing = indexed.getFileName().toString();
+                UploadJobService.UploadJob duplicate = jobs.completeDuplicate(existing, "/pdf/" + existing,
+                        indexingService.pageCount(existing));
+                return new UploadResult(existing, duplicate.getUrl(), indexed.toString(),
+                        duplicate.getJobId(), duplicate.getStatus().name(), true);
+            }
+
+            // --- Copie optionnelle côté front/public/pdf, sans relire le flux d'upload ---
+            if (frontPublicDir != null) {
+                publishToFront(target, baseName);
+            }
+
+            // URL publique servie par Spring (resources/static)
+            return new UploadResult(baseName, job.getUrl(), target.toString(), job.getJobId(), job.getStatus().name(), false);
+        } catch (Exception e) {
+            jobs.cancelReservation();
+            throw e;
+        } finally {
+            Files.deleteIfExists(tmp); // doublon ou échec ; déjà déplacé sinon
         }
+    }
 
-        // --- Écriture côté back (STREAM, pas de file.getBytes()) ---
-        try (var in = file.getInputStream()) {
+    private static String copyAndHash(MultipartFile file, Path target) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), md)) {
             Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
         }
-        System.out.println("[Upload] Sauvé back: " + target);
+        return HexFormat.of().formatHex(md.digest());
+    }
 
-        // --- Copie optionnelle côté front/public/pdf (STREAM) ---
-        if (frontPublicDir != null) {
+    /**
+     * Lien physique si le front est sur le même système de fichiers (aucun octet copié),
+     * sinon copie noyau à noyau (transferTo). Non bloquant.
+     */
+    private void publishToFront(Path stored, String filename) {
+        Path frontTarget = frontPublicDir.resolve(filename).normalize();
+        try {
+            Files.deleteIfExists(frontTarget);
             try {
-                Path frontTarget = frontPublicDir.resolve(baseName).normalize();
-                try (var in2 = file.getInputStream()) {
-                    Files.copy(in2, frontTarget, StandardCopyOption.REPLACE_EXISTING);
+                Files.createLink(frontTarget, stored);
+                System.out.println("[Upload] Lié front: " + frontTarget);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // autre volume ou liens non supportés : copie
+            }
+            try (FileChannel in = FileChannel.open(stored, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(frontTarget, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                for (long pos = 0; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
                 }
-                System.out.println("[Upload] Copié front: " + frontTarget);
-            } catch (Exception e) {
-                System.err.println("[Upload] Copie front échouée: " + e.getMessage());
-                // Non bloquant
             }
+            System.out.println("[Upload] Copié front: " + frontTarget);
+        } catch (Exception e) {
+            System.err.println("[Upload] Copie front échouée: " + e.getMessage());
         }
-
-        // --- Indexation immédiate ---
-        indexer.indexPdf(target.toString());
-
-        // URL publique servie par Spring (resources/static)
-        String publicUrl = "/pdf/" + baseName;
-        return new UploadResult(baseName, publicUrl, target.toString());
     }
 
     // --- DTO retour ---
@@ -92,15 +217,24 @@ public class UploadService {
         private final String filename;
         private final String url;
         private final String absolutePath;
+        private final String jobId;
+        private final String status;
+        private final boolean duplicate; // contenu déjà connu : filename/url désignent le fichier existant
 
-        public UploadResult(String filename, String url, String absolutePath) {
+        public UploadResult(String filename, String url, String absolutePath, String jobId, String status, boolean duplicate) {
             this.filename = filename;
             this.url = url;
             this.absolutePath = absolutePath;
+            this.jobId = jobId;
+            this.status = status;
+            this.duplicate = duplicate;
         }
 
         public String getFilename() { return filename; }
         public String getUrl() { return url; }
         public String getAbsolutePath() { return absolutePath; }
+        public String getJobId() { return jobId; }
+        public String getStatus() { return status; }
+        public boolean isDuplicate() { return duplicate; }
     }
 }
@@ -0,0 +1,175 @@
+package pdf.archi_web;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Équivalent de SearcherManager pour un index en shards : un DirectoryReader par shard (NRT sur son writer,
+ * ou sur le dernier commit de son dossier), réunis dans un MultiReader. Les doc ids restent globaux :
+ * searchAfter, curseurs et cache fonctionnent comme sur un index unique.
+ * <p>
+ * Avec un executor, chaque requête est répartie entre les shards (et les gros segments d'un même shard)
+ * et les meilleurs résultats de chacun sont fusionnés par score par {@link IndexSearcher}.
+ * Un refresh ne rouvre que les shards qui ont changé.
+ */
+public class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+    // Découpage d'un gros shard, comme IndexSearcher par défaut
+    private static final int MAX_DOCS_PER_SLICE = 250_000;
+    private static final int MAX_SEGMENTS_PER_SLICE = 5;
+
+    private final IndexWriter[] writers;
+    private final Directory[] directories;
+    private final Executor executor;
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Searchers NRT : voient les documents ajoutés aux writers avant même leur commit.
+     * @param executor répartition des requêtes entre shards (null : tout sur le thread appelant)
+     */
+    public ShardedSearcherManager(IndexWriter[] writers, Executor executor) throws IOException {
+        this(writers, null, open(writers), executor);
+    }
+
+    /**
+     * Searchers sur les derniers commits des dossiers (lecture seule, sans writer). Un dossier encore sans
+     * commit (réplique pas encore synchronisée) compte comme un shard vide jusqu'au refresh qui le trouve.
+     */
+    public ShardedSearcherManager(Directory[] directories, Executor executor) throws IOException {
+        this(null, directories, open(directories), executor);
+    }
+
+    private ShardedSearcherManager(IndexWriter[] writers, Directory[] directories, DirectoryReader[] readers,
+                                   Executor executor) throws IOException {
+        this.writers = writers;
+        this.directories = directories;
+        this.executor = executor;
+        current = newSearcher(readers, readers);
+    }
+
+    private static DirectoryReader[] open(IndexWriter[] writers) throws IOException {
+        DirectoryReader[] readers = new DirectoryReader[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            readers[i] = DirectoryReader.open(writers[i]);
+        }
+        return readers;
+    }
+
+    private static DirectoryReader[] open(Directory[] directories) throws IOException {
+        DirectoryReader[] readers = new DirectoryReader[directories.length];
+        for (int i = 0; i < directories.length; i++) {
+            readers[i] = DirectoryReader.indexExists(directories[i]) ? DirectoryReader.open(directories[i]) : null;
+        }
+        return readers;
+    }
+
+    /**
+     * @param opened readers venant d'être ouverts : leur référence passe au MultiReader
+     */
+    private IndexSearcher newSearcher(DirectoryReader[] readers, DirectoryReader[] opened) throws IOException {
+        MultiReader reader;
+        try {
+            DirectoryReader[] present = Arrays.stream(readers).filter(Objects::nonNull).toArray(DirectoryReader[]::new);
+            reader = new MultiReader(present, false); // une référence de plus sur chaque shard
+        } catch (IOException | RuntimeException e) {
+            for (DirectoryReader r : opened) {
+                if (r != null) r.decRef();
+            }
+            throw e;
+        }
+        for (DirectoryReader r : opened) {
+            if (r != null) r.decRef();
+        }
+        return new ShardedSearcher(reader, readers, versions.incrementAndGet(), executor);
+    }
+
+    @Override
+    protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+        DirectoryReader[] readers = ((ShardedSearcher) referenceToRefresh).shards;
+        DirectoryReader[] next = readers.clone();
+        DirectoryReader[] opened = new DirectoryReader[readers.length];
+        boolean changed = false;
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                if (writers != null) {
+                    opened[i] = DirectoryReader.openIfChanged(readers[i], writers[i]);
+                } else if (readers[i] != null) {
+                    opened[i] = DirectoryReader.openIfChanged(readers[i]);
+                } else if (DirectoryReader.indexExists(directories[i])) {
+                    opened[i] = DirectoryReader.open(directories[i]);
+                }
+                if (opened[i] != null) {
+                    next[i] = opened[i];
+                    changed = true;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (DirectoryReader r : opened) {
+                if (r != null) r.decRef();
+            }
+            throw e;
+        }
+        return changed ? newSearcher(next, opened) : null;
+    }
+
+    @Override
+    protected void decRef(IndexSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected boolean tryIncRef(IndexSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(IndexSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+
+    /** Version du searcher : croissante à chaque refresh effectif (clé du cache et des curseurs). */
+    public static long version(IndexSearcher searcher) {
+        return ((ShardedSearcher) searcher).version;
+    }
+
+    /** Searcher sur tous les shards, découpé en tranches qui ne mélangent jamais deux shards. */
+    private static final class ShardedSearcher extends IndexSearcher {
+        final DirectoryReader[] shards;
+        final long version;
+
+        ShardedSearcher(IndexReader reader, DirectoryReader[] shards, long version, Executor executor) {
+            super(reader, executor);
+            this.shards = shards;
+            this.version = version;
+        }
+
+        @Override
+        protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+            // les feuilles d'un même shard ont pour parent le contexte de son DirectoryReader
+            List<LeafSlice> slices = new ArrayList<>();
+            int start = 0;
+            for (int i = 1; i <= leaves.size(); i++) {
+                if (i == leaves.size() || leaves.get(i).parent != leaves.get(start).parent) {
+                    slices.addAll(Arrays.asList(
+                            slices(leaves.subList(start, i), MAX_DOCS_PER_SLICE, MAX_SEGMENTS_PER_SLICE)));
+                    start = i;
+                }
+            }
+            return slices.toArray(new LeafSlice[0]);
+        }
+    }
+}
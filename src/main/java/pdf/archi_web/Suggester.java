@@ -0,0 +1,303 @@
+package pdf.archi_web;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.ElisionFilter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Suggestions de saisie (mots et expressions de deux mots du corpus), servies par un
+ * {@link AnalyzingInfixSuggester} : petit index Lucene à part, interrogé par préfixe sur n'importe quel mot
+ * de la suggestion (« clim » propose « réchauffement climatique »), trié par poids.
+ * <p>
+ * Les candidats d'un PDF sont récoltés page par page pendant l'extraction ({@link Harvest}), puis ajoutés
+ * une fois le fichier indexé : le poids d'une suggestion est son nombre d'occurrences cumulé sur les fichiers.
+ * Un fichier réindexé s'ajoute à nouveau (poids approché) ; une réindexation complète repart de zéro.
+ */
+public class Suggester implements Closeable {
+
+    /** Préfixes plus courts : requête par préfixe plutôt que par n-grammes (cf. AnalyzingInfixSuggester). */
+    public static final int MIN_PREFIX_CHARS = 3;
+    /** Candidats retenus par fichier (les plus fréquents). */
+    public static final int MAX_PER_FILE = 5000;
+    /** Au-delà, une récolte ne prend plus de nouveaux candidats (mémoire bornée pour les très gros PDF). */
+    public static final int MAX_CANDIDATES = 200_000;
+
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final CharArraySet STOP_WORDS = FrenchAnalyzer.getDefaultStopSet();
+
+    /**
+     * Candidats d'un fichier, cumulés par les extracteurs (thread-safe) : mots d'au moins trois lettres
+     * hors mots vides, et paires de tels mots consécutifs sur une même ligne.
+     */
+    public static final class Harvest {
+        private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        public void addPage(String text) {
+            for (String line : text.split("\n")) {
+                Matcher m = WORD.matcher(line);
+                String previous = null;
+                int previousEnd = -1;
+                while (m.find()) {
+                    String word = m.group().toLowerCase(Locale.ROOT);
+                    if (!isCandidate(word)) {
+                        previous = null;
+                        continue;
+                    }
+                    count(word);
+                    // « réchauffement climatique », pas « guerre d'indépendance » ni « page 12 »
+                    if (previous != null && m.start() == previousEnd + 1 && line.charAt(previousEnd) == ' ') {
+                        count(previous + ' ' + word);
+                    }
+                    previous = word;
+                    previousEnd = m.end();
+                }
+            }
+        }
+
+        private void count(String candidate) {
+            LongAdder n = counts.get(candidate);
+            if (n == null) {
+                if (counts.size() >= MAX_CANDIDATES) return;
+                n = counts.computeIfAbsent(candidate, k -> new LongAdder());
+            }
+            n.increment();
+        }
+
+        /** Les {@code max} candidats les plus fréquents ; une expression doit apparaître au moins deux fois. */
+        List<Map.Entry<String, Long>> top(int max) {
+            return counts.entrySet().stream()
+                    .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                    .filter(e -> e.getKey().indexOf(' ') < 0 || e.getValue() >= 2)
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(max)
+                    .toList();
+        }
+
+        public int size() {
+            return counts.size();
+        }
+    }
+
+    /** Suggestion et son poids (occurrences dans le corpus). */
+    public record Suggestion(String text, long weight) {}
+
+    private final Directory directory;
+    private final InfixSuggester suggester;
+    private volatile boolean dirty;
+
+    /**
+     * @param directory index des suggestions (fermé avec le suggester)
+     */
+    public Suggester(Directory directory) throws IOException {
+        this.directory = directory;
+        this.suggester = new InfixSuggester(directory, analyzer());
+    }
+
+    /**
+     * Réplication : retient le dernier commit des suggestions le temps de sa publication (cf. {@link IndexPublisher}).
+     */
+    public IndexPublisher.Snapshots snapshots() {
+        IndexPublisher.Snapshots policy = IndexPublisher.Snapshots.of(suggester.snapshots);
+        Set<IndexCommit> unpinned = Collections.newSetFromMap(new IdentityHashMap<>());
+        return new IndexPublisher.Snapshots() {
+            @Override
+            public IndexCommit snapshot() throws IOException {
+                IndexCommit commit = policy.snapshot();
+                if (commit != null || !DirectoryReader.indexExists(directory)) return commit;
+                // writer pas encore ouvert depuis le démarrage : rien ne supprime le dernier commit du dossier
+                List<IndexCommit> commits = DirectoryReader.listCommits(directory);
+                IndexCommit last = commits.get(commits.size() - 1);
+                unpinned.add(last);
+                return last;
+            }
+
+            @Override
+            public void release(IndexCommit commit) throws IOException {
+                if (!unpinned.remove(commit)) policy.release(commit);
+            }
+        };
+    }
+
+    /**
+     * Réplique : rend visibles les suggestions du dernier commit copié dans le dossier.
+     */
+    public void reopen() throws IOException {
+        suggester.reopen();
+    }
+
+    /**
+     * Analyseur des suggestions : comme {@link PdfAnalyzer} mais sans racinisation, pour que
+     * le préfixe saisi corresponde au début des mots (« rechauf » trouve « réchauffement »).
+     */
+    static Analyzer analyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                StandardTokenizer source = new StandardTokenizer();
+                TokenStream result = new ElisionFilter(source, FrenchAnalyzer.DEFAULT_ARTICLES);
+                result = new LowerCaseFilter(result);
+                result = new ASCIIFoldingFilter(result);
+                return new TokenStreamComponents(source, result);
+            }
+        };
+    }
+
+    static boolean isCandidate(String word) {
+        if (word.length() < MIN_WORD_LENGTH || STOP_WORDS.contains(word)) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetter(word.charAt(i))) return true;
+        }
+        return false; // nombres
+    }
+
+    /**
+     * Ajoute les candidats d'un fichier indexé (poids cumulés) et les rend visibles aussitôt.
+     * @return nombre de suggestions ajoutées ou mises à jour
+     */
+    public synchronized int add(Harvest harvest) throws IOException {
+        List<Map.Entry<String, Long>> top = harvest.top(MAX_PER_FILE);
+        if (top.isEmpty()) return 0;
+        for (Map.Entry<String, Long> e : top) {
+            long weight = suggester.weight(e.getKey()) + e.getValue();
+            suggester.update(new BytesRef(e.getKey()), null, weight, null);
+        }
+        suggester.refresh();
+        dirty = true;
+        return top.size();
+    }
+
+    /**
+     * Au plus {@code limit} suggestions, par poids décroissant, dont les mots commencent par ceux saisis
+     * (le dernier pouvant être incomplet).
+     */
+    public List<Suggestion> lookup(String prefix, int limit) throws IOException {
+        if (prefix == null || prefix.isBlank() || suggester.getCount() == 0) return List.of();
+        List<Lookup.LookupResult> results = suggester.lookup(prefix, limit, true, false);
+        List<Suggestion> suggestions = new ArrayList<>(results.size());
+        for (Lookup.LookupResult r : results) {
+            suggestions.add(new Suggestion(r.key.toString(), r.value));
+        }
+        return suggestions;
+    }
+
+    /** Vide les suggestions (réindexation complète). */
+    public synchronized void reset() throws IOException {
+        suggester.build(InputIterator.EMPTY);
+        dirty = true;
+    }
+
+    /** Rend durables les suggestions ajoutées (appelé avec le commit de l'index principal). */
+    public synchronized void commit() throws IOException {
+        if (!dirty) return;
+        suggester.commit();
+        dirty = false;
+    }
+
+    public long size() throws IOException {
+        return suggester.getCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        suggester.close(); // ferme aussi le writer (commit des derniers ajouts)
+        directory.close();
+    }
+
+    /**
+     * Donne accès au poids courant d'une suggestion, pour le cumuler d'un fichier à l'autre ;
+     * retient les commits publiés aux répliques et relit ceux qu'elles reçoivent.
+     */
+    private static final class InfixSuggester extends AnalyzingInfixSuggester {
+
+        // même politique d'un writer à l'autre (build() en rouvre un) : les commits retenus le restent
+        final SnapshotDeletionPolicy snapshots = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        private final Directory directory;
+
+        InfixSuggester(Directory directory, Analyzer analyzer) throws IOException {
+            // writer gardé ouvert et pas de commit à la reconstruction : commits regroupés avec l'index principal
+            super(directory, analyzer, analyzer, MIN_PREFIX_CHARS, false, true, false, false);
+            this.directory = directory;
+        }
+
+        @Override
+        protected IndexWriterConfig getIndexWriterConfig(Analyzer indexAnalyzer, IndexWriterConfig.OpenMode openMode) {
+            IndexWriterConfig config = super.getIndexWriterConfig(indexAnalyzer, openMode);
+            config.setIndexDeletionPolicy(snapshots);
+            return config;
+        }
+
+        void reopen() throws IOException {
+            searcherMgrLock.writeLock().lock();
+            try {
+                if (searcherMgr != null) {
+                    searcherMgr.maybeRefreshBlocking();
+                } else if (DirectoryReader.indexExists(directory)) {
+                    searcherMgr = new SearcherManager(directory, null);
+                }
+            } finally {
+                searcherMgrLock.writeLock().unlock();
+            }
+        }
+
+        long weight(String text) throws IOException {
+            SearcherManager manager;
+            searcherMgrLock.readLock().lock();
+            try {
+                manager = searcherMgr;
+            } finally {
+                searcherMgrLock.readLock().unlock();
+            }
+            if (manager == null) return 0;
+            IndexSearcher searcher = manager.acquire();
+            try {
+                ScoreDoc[] hits = searcher.search(new TermQuery(new Term(EXACT_TEXT_FIELD_NAME, text)), 1).scoreDocs;
+                if (hits.length == 0) return 0;
+                List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[0].doc, leaves));
+                NumericDocValues weights = DocValues.getNumeric(leaf.reader(), "weight");
+                return weights.advanceExact(hits[0].doc - leaf.docBase) ? weights.longValue() : 0;
+            } finally {
+                manager.release(searcher);
+            }
+        }
+    }
+}
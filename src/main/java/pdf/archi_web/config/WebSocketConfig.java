@@ -21,7 +21,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Préfixe pour s'abonner aux topics
-        config.enableSimpleBroker("/topic", "/queue/results");
+        config.enableSimpleBroker("/topic", "/queue/results", "/queue/suggest");
 
         // Préfixe pour envoyer des messages
         config.setApplicationDestinationPrefixes("/app");
@@ -1,32 +1,97 @@
 // src/main/java/pdf/archi_web/services/AuditLogService.java
 package pdf.archi_web.services;
 
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import pdf.archi_web.DTO.HistoryEntry;
 import pdf.archi_web.DTO.SearchResult;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Journal d'audit asynchrone : les threads de recherche et d'upload déposent leur événement dans une file
+ * sans verrou et repartent ; un unique thread écrivain la vide par lots dans un canal gardé ouvert,
+ * et alimente au passage l'historique interrogeable ({@link HistoryStore}).
+ * <p>
+ * La file est bornée : sous surcharge, les événements en trop sont comptés puis signalés dans le journal
+ * plutôt que de ralentir les requêtes. Le fichier tourne par taille et à chaque changement de jour
+ * (audit.log -> audit-AAAA-MM-JJ[.N].log). Politique de fsync : {@code audit.fsync} = never (cache du
+ * système), batch (après chaque lot) ou interval (au plus toutes les {@code audit.fsync-interval-ms}).
+ */
 @Service
 public class AuditLogService {
 
     private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
     private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
-    private static final Path LOG_DIR = Path.of("logs");
-    private static final Path LOG_FILE = LOG_DIR.resolve("audit.log");
+    private static final String LOG_NAME = "audit.log";
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 
-    public AuditLogService() {
+    enum FsyncPolicy { NEVER, BATCH, INTERVAL }
+
+    private final Path logDir;
+    private final Path logFile;
+    private final int capacity;
+    private final long maxFileBytes;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalNanos;
+
+    // File multi-producteurs / consommateur unique ; la taille est suivie à part pour la borner
+    private final ConcurrentLinkedQueue<HistoryEntry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final HistoryStore history;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // État du thread écrivain uniquement
+    private final ByteBuffer buffer;
+    private FileChannel channel;
+    private LocalDate fileDate;
+    private long fileSize;
+    private long lastFsync = System.nanoTime();
+    private boolean dirty; // écrit depuis le dernier fsync
+    private long droppedReported;
+
+    public AuditLogService(@Value("${audit.dir:logs}") String dir,
+                           @Value("${audit.queue-capacity:65536}") int capacity,
+                           @Value("${audit.batch-bytes:65536}") int batchBytes,
+                           @Value("${audit.max-file-mb:50}") long maxFileMb,
+                           @Value("${audit.fsync:interval}") String fsync,
+                           @Value("${audit.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                           HistoryStore history) {
+        this.logDir = Path.of(dir);
+        this.logFile = logDir.resolve(LOG_NAME);
+        this.capacity = capacity;
+        this.maxFileBytes = maxFileMb * 1024 * 1024;
+        this.fsync = FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.history = history;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(4096, batchBytes));
         try {
-            Files.createDirectories(LOG_DIR);
-            if (!Files.exists(LOG_FILE)) {
-                Files.createFile(LOG_FILE);
-            }
+            Files.createDirectories(logDir);
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        writer = new Thread(this::drainLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
     }
 
     /* ----------------- Upload ----------------- */
@@ -37,55 +102,232 @@ public class AuditLogService {
     }
 
     public void logUploadOk(String user, String filename, long sizeBytes, String url) {
-        String line = formatBase("UPLOAD", user, "OK")
-                + " | fichier=" + (filename == null ? "" : filename)
-                + " | taille=" + sizeBytes + " octets"
-                + (url == null ? "" : " | url=" + safe(url));
-        write(line);
+        write(new HistoryEntry(System.currentTimeMillis(), user(user), "UPLOAD", "OK", null,
+                filename == null ? "" : filename, sizeBytes, url, null, null, null));
     }
 
     public void logUploadError(String user, String filename, String error) {
-        String line = formatBase("UPLOAD", user, "ERROR")
-                + " | fichier=" + (filename == null ? "" : filename)
-                + " | erreur=" + safe(error);
-        write(line);
+        write(new HistoryEntry(System.currentTimeMillis(), user(user), "UPLOAD", "ERROR", null,
+                filename == null ? "" : filename, null, null, null, null, safe(error)));
     }
 
     /* ----------------- Search ----------------- */
 
     public void logSearchOk(String user, String query, List<SearchResult> results) {
-        int n = (results == null) ? 0 : results.size();
-        String line = formatBase("SEARCH", user, "OK")
-                + " | query=\"" + safe(query) + "\""
-                + " | occurrences=" + n;
-        write(line);
+        logSearchOk(user, query, (results == null) ? 0 : results.size());
+    }
+
+    public void logSearchOk(String user, String query, int n) {
+        logSearchOk(user, query, n, null);
+    }
+
+    /**
+     * @param latencyMs temps de réponse du premier lot de résultats (null si inconnu)
+     */
+    public void logSearchOk(String user, String query, int n, Long latencyMs) {
+        write(new HistoryEntry(System.currentTimeMillis(), user(user), "SEARCH", "OK", safe(query),
+                null, null, null, n, latencyMs, null));
+    }
+
+    /**
+     * Recherche arrêtée avant la fin (remplacée, connexion fermée, curseur expiré).
+     * @param n résultats envoyés avant l'arrêt
+     */
+    public void logSearchCancelled(String user, String query, int n, Long latencyMs) {
+        write(new HistoryEntry(System.currentTimeMillis(), user(user), "SEARCH", "CANCELLED", safe(query),
+                null, null, null, n, latencyMs, null));
     }
 
     public void logSearchError(String user, String query, String error) {
-        String line = formatBase("SEARCH", user, "ERROR")
-                + " | query=\"" + safe(query) + "\""
-                + " | erreur=" + safe(error);
-        write(line);
+        write(new HistoryEntry(System.currentTimeMillis(), user(user), "SEARCH", "ERROR", safe(query),
+                null, null, null, null, null, safe(error)));
     }
 
     /* ----------------- Helpers ----------------- */
 
-    private String formatBase(String action, String user, String status) {
-        return ZonedDateTime.now(PARIS).format(TS)
-                + " | user=" + (user == null ? "Maxime" : user)
-                + " | action=" + action
-                + " | status=" + status;
+    /**
+     * Ligne du journal texte ; formatée sur le thread écrivain, pas sur celui de la requête.
+     */
+    static String format(HistoryEntry e) {
+        StringBuilder line = new StringBuilder(160)
+                .append(ZonedDateTime.ofInstant(Instant.ofEpochMilli(e.getTimestamp()), PARIS).format(TS))
+                .append(" | user=").append(e.getUser())
+                .append(" | action=").append(e.getAction())
+                .append(" | status=").append(e.getStatus());
+        if (e.getQuery() != null) line.append(" | query=\"").append(e.getQuery()).append('"');
+        if (e.getFilename() != null) line.append(" | fichier=").append(e.getFilename());
+        if (e.getSizeBytes() != null) line.append(" | taille=").append(e.getSizeBytes()).append(" octets");
+        if (e.getUrl() != null) line.append(" | url=").append(safe(e.getUrl()));
+        if (e.getOccurrences() != null) line.append(" | occurrences=").append(e.getOccurrences());
+        if (e.getLatencyMs() != null) line.append(" | duree=").append(e.getLatencyMs()).append("ms");
+        if (e.getError() != null) line.append(" | erreur=").append(e.getError());
+        return line.toString();
     }
 
-    private void write(String line) {
+    private static String user(String user) {
+        return user == null ? "Maxime" : user;
+    }
+
+    /**
+     * Dépose l'événement pour le thread écrivain, sans jamais bloquer ; compté comme perdu si la file est pleine.
+     */
+    private void write(HistoryEntry entry) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(entry);
+        LockSupport.unpark(writer);
+    }
+
+    /** Nombre total d'événements perdus faute de place dans la file. */
+    public long droppedEvents() {
+        return dropped.get();
+    }
+
+    /* ----------------- Thread écrivain ----------------- */
+
+    private void drainLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                if (queue.isEmpty()) {
+                    // réveillé par write() ; le délai borne l'attente d'un fsync périodique
+                    LockSupport.parkNanos(fsync == FsyncPolicy.INTERVAL ? fsyncIntervalNanos : TimeUnit.SECONDS.toNanos(1));
+                }
+                writeBatch();
+            } catch (Exception e) {
+                System.err.println("[Audit] écriture impossible : " + e.getMessage());
+                buffer.clear(); // lot perdu, on repart sur un canal neuf
+                closeChannel();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
         try {
-            Files.writeString(LOG_FILE, line + System.lineSeparator(),
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            writeBatch();
+            if (channel != null && fsync != FsyncPolicy.NEVER) channel.force(false);
         } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println("[Audit] écriture impossible : " + e.getMessage());
+        }
+        closeChannel();
+    }
+
+    /**
+     * Vide la file par lots de la taille du tampon : un appel système par lot, pas par ligne.
+     */
+    private void writeBatch() throws IOException {
+        reportDropped();
+        boolean wrote = false;
+        HistoryEntry entry;
+        while ((entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            history.add(entry);
+            byte[] bytes = format(entry).getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < bytes.length + NEWLINE.length) {
+                flushBuffer();
+                wrote = true;
+            }
+            if (bytes.length + NEWLINE.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+                writeFully(ByteBuffer.wrap(NEWLINE));
+                continue;
+            }
+            buffer.put(bytes).put(NEWLINE);
+        }
+        if (buffer.position() > 0) {
+            flushBuffer();
+            wrote = true;
+        }
+        dirty |= wrote;
+        history.afterBatch();
+
+        long now = System.nanoTime();
+        if (channel != null && dirty && (fsync == FsyncPolicy.BATCH
+                || fsync == FsyncPolicy.INTERVAL && now - lastFsync >= fsyncIntervalNanos)) {
+            channel.force(false);
+            lastFsync = now;
+            dirty = false;
+        }
+    }
+
+    private void reportDropped() throws IOException {
+        long total = dropped.get();
+        if (total == droppedReported) return;
+        long lost = total - droppedReported;
+        droppedReported = total;
+        System.err.println("[Audit] " + lost + " événements perdus (file pleine)");
+        // ligne écrite directement : la file est justement saturée
+        HistoryEntry report = new HistoryEntry(System.currentTimeMillis(), "system", "AUDIT", "DROPPED",
+                null, null, null, null, null, null, null);
+        byte[] bytes = (format(report) + " | evenements=" + lost).getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length + NEWLINE.length) flushBuffer();
+        buffer.put(bytes).put(NEWLINE);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        rotateIfNeeded(src.remaining());
+        while (src.hasRemaining()) {
+            fileSize += channel.write(src);
         }
     }
 
+    /**
+     * Ouvre le fichier courant, et l'archive s'il a changé de jour ou atteint la taille maximale.
+     */
+    private void rotateIfNeeded(int incoming) throws IOException {
+        LocalDate today = LocalDate.now(PARIS);
+        if (channel == null) {
+            Files.createDirectories(logDir);
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            fileSize = channel.size();
+            fileDate = fileSize == 0 ? today
+                    : LocalDate.ofInstant(Files.getLastModifiedTime(logFile).toInstant(), PARIS);
+        }
+        boolean newDay = !today.equals(fileDate);
+        if (newDay && fileSize == 0) {
+            fileDate = today;
+            newDay = false;
+        }
+        boolean full = fileSize > 0 && fileSize + incoming > maxFileBytes;
+        if (!newDay && !full) return;
+
+        if (fsync != FsyncPolicy.NEVER) channel.force(false);
+        closeChannel();
+        Path archive = logDir.resolve("audit-" + fileDate + ".log");
+        for (int i = 1; Files.exists(archive); i++) {
+            archive = logDir.resolve("audit-" + fileDate + "." + i + ".log");
+        }
+        Files.move(logFile, archive);
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = 0;
+        fileDate = today;
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    /**
+     * Vide la file avant l'arrêt : aucun événement accepté n'est perdu.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
     private static String safe(String s) {
         return s == null ? "" : s.replace("\n", " ").replace("\r", " ");
     }
@@ -0,0 +1,576 @@
+package pdf.archi_web.services;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.DTO.HistoryEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Historique des recherches et uploads, interrogeable sans relire les journaux texte.
+ * <p>
+ * Un petit index Lucene par mois (history/AAAA-MM) : une requête sur une période n'ouvre que les mois
+ * concernés, et utilisateur, requête, date, nombre de résultats et durée sont indexés en doc values
+ * pour filtrer et agréger sans charger les documents. Alimenté par le thread écrivain d'{@link AuditLogService}.
+ */
+@Service
+public class HistoryStore {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    // Une valeur de doc values triée ne peut dépasser 32 Ko
+    private static final int MAX_KEY_LENGTH = 1000;
+    /** Intervalles au plus par appel à {@link #stats}. */
+    public static final int MAX_BUCKETS = 10_000;
+    // Import des anciens journaux : date limite fixée à son lancement, puis marqueur écrit une fois allé au bout
+    static final String IMPORT_CUTOFF = "legacy-import.cutoff";
+    static final String IMPORT_DONE = "legacy-import.done";
+
+    /** Requête la plus fréquente sur une période. */
+    public record QueryStat(String query, long count, long errors, double avgOccurrences, double avgLatencyMs) {}
+
+    /** Agrégats d'un intervalle de temps. */
+    public record Bucket(long start, long searches, long searchErrors, long uploads, long uploadErrors,
+                         double avgOccurrences, double avgLatencyMs, long maxLatencyMs) {}
+
+    private static final class Partition {
+        final FSDirectory dir;
+        final IndexWriter writer;
+        final SearcherManager manager;
+        final long start;
+        final long end;
+
+        Partition(Path path, YearMonth month) throws IOException {
+            this.dir = FSDirectory.open(path);
+            IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer())
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            this.writer = new IndexWriter(dir, config);
+            this.manager = new SearcherManager(writer, null);
+            this.start = month.atDay(1).atStartOfDay(PARIS).toInstant().toEpochMilli();
+            this.end = month.plusMonths(1).atDay(1).atStartOfDay(PARIS).toInstant().toEpochMilli();
+        }
+
+        void close() throws IOException {
+            manager.close();
+            writer.close();
+            dir.close();
+        }
+    }
+
+    private final Path root;
+    private final long commitIntervalMs;
+    private final ConcurrentSkipListMap<YearMonth, Partition> partitions = new ConcurrentSkipListMap<>();
+    private volatile long lastCommit = System.currentTimeMillis();
+    private boolean dirty; // thread écrivain uniquement
+    private Thread importer;
+
+    public HistoryStore(@Value("${history.dir:history}") String dir,
+                        @Value("${history.commit-interval-ms:5000}") long commitIntervalMs,
+                        @Value("${history.import-legacy:true}") boolean importLegacy,
+                        @Value("${history.legacy-searches-log:recherches.log}") String searchesLog,
+                        @Value("${audit.dir:logs}") String auditDir) throws IOException {
+        this.root = Path.of(dir);
+        this.commitIntervalMs = commitIntervalMs;
+        Files.createDirectories(root);
+        try (DirectoryStream<Path> months = Files.newDirectoryStream(root, "[0-9][0-9][0-9][0-9]-[0-9][0-9]")) {
+            for (Path p : months) {
+                partition(YearMonth.parse(p.getFileName().toString(), MONTH));
+            }
+        }
+
+        // Reprise des anciens journaux, en arrière-plan, à chaque démarrage tant qu'elle n'est pas allée au bout
+        if (importLegacy && !Files.exists(root.resolve(IMPORT_DONE))) {
+            long before = importCutoff();
+            importer = new Thread(() -> importLegacy(Path.of(auditDir), Path.of(searchesLog), before), "history-import");
+            importer.setDaemon(true);
+            importer.start();
+        }
+    }
+
+    /**
+     * Date limite de l'import : fixée au premier démarrage qui l'entreprend, avant tout événement d'audit, et conservée
+     * jusqu'à ce qu'il aboutisse. Les événements suivants arrivent par {@link AuditLogService}.
+     */
+    private long importCutoff() throws IOException {
+        Path file = root.resolve(IMPORT_CUTOFF);
+        if (Files.exists(file)) return Long.parseLong(Files.readString(file).trim());
+        long cutoff = System.currentTimeMillis();
+        writeMarker(file, Long.toString(cutoff));
+        return cutoff;
+    }
+
+    private void writeMarker(Path file, String content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, content);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Attend la fin de l'import des anciens journaux lancé au démarrage (tests). */
+    void awaitImport() throws InterruptedException {
+        if (importer != null) importer.join();
+    }
+
+    /* ----------------- Écriture ----------------- */
+
+    /**
+     * Ajoute un événement (thread écrivain d'audit) ; visible après {@link #afterBatch()}.
+     */
+    public void add(HistoryEntry e) {
+        try {
+            partitionFor(e.getTimestamp()).writer.addDocument(toDocument(e));
+            dirty = true;
+        } catch (Exception ex) {
+            System.err.println("[History] événement non indexé : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Fin d'un lot : rend les événements visibles, et les commite au plus toutes les {@code history.commit-interval-ms}.
+     */
+    public void afterBatch() {
+        if (!dirty) return;
+        try {
+            boolean commit = System.currentTimeMillis() - lastCommit >= commitIntervalMs;
+            for (Partition p : partitions.values()) {
+                if (commit && p.writer.hasUncommittedChanges()) p.writer.commit();
+                p.manager.maybeRefresh();
+            }
+            if (commit) {
+                lastCommit = System.currentTimeMillis();
+                dirty = false;
+            }
+        } catch (IOException ex) {
+            System.err.println("[History] commit impossible : " + ex.getMessage());
+        }
+    }
+
+    private static Document toDocument(HistoryEntry e) {
+        Document d = new Document();
+        d.add(new LongPoint("ts", e.getTimestamp()));
+        d.add(new NumericDocValuesField("ts", e.getTimestamp()));
+        d.add(new StoredField("ts", e.getTimestamp()));
+        keyword(d, "user", e.getUser());
+        keyword(d, "action", e.getAction());
+        keyword(d, "status", e.getStatus());
+        if (e.getQuery() != null) {
+            d.add(new StoredField("query", e.getQuery()));
+            keyword(d, "query_key", queryKey(e.getQuery()));
+        }
+        if (e.getFilename() != null) d.add(new StoredField("filename", e.getFilename()));
+        if (e.getUrl() != null) d.add(new StoredField("url", e.getUrl()));
+        if (e.getError() != null) d.add(new StoredField("error", e.getError()));
+        if (e.getSizeBytes() != null) d.add(new StoredField("size", e.getSizeBytes()));
+        if (e.getOccurrences() != null) {
+            d.add(new NumericDocValuesField("occurrences", e.getOccurrences()));
+            d.add(new StoredField("occurrences", e.getOccurrences()));
+        }
+        if (e.getLatencyMs() != null) {
+            d.add(new NumericDocValuesField("latency", e.getLatencyMs()));
+            d.add(new StoredField("latency", e.getLatencyMs()));
+        }
+        return d;
+    }
+
+    private static void keyword(Document d, String field, String value) {
+        if (value == null) return;
+        value = truncate(value);
+        d.add(new StringField(field, value, Field.Store.YES));
+        d.add(new SortedDocValuesField(field, new BytesRef(value)));
+    }
+
+    /** Forme de regroupement des requêtes : casse et espaces ignorés. */
+    public static String queryKey(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String truncate(String s) {
+        return s.length() > MAX_KEY_LENGTH ? s.substring(0, MAX_KEY_LENGTH) : s;
+    }
+
+    private Partition partitionFor(long timestamp) throws IOException {
+        return partition(YearMonth.from(Instant.ofEpochMilli(timestamp).atZone(PARIS)));
+    }
+
+    private Partition partition(YearMonth month) throws IOException {
+        Partition p = partitions.get(month);
+        if (p != null) return p;
+        synchronized (partitions) {
+            p = partitions.get(month);
+            if (p == null) {
+                p = new Partition(root.resolve(month.format(MONTH)), month);
+                partitions.put(month, p);
+            }
+            return p;
+        }
+    }
+
+    /* ----------------- Lecture ----------------- */
+
+    /**
+     * Événements les plus récents de la période, filtrés par utilisateur / requête / action (null : pas de filtre).
+     */
+    public List<HistoryEntry> recent(long from, long to, String user, String query, String action, int limit) throws IOException {
+        Query q = filter(from, to, user, query, action, null);
+        Sort byTimeDesc = new Sort(new SortField("ts", SortField.Type.LONG, true));
+        List<HistoryEntry> out = new ArrayList<>();
+        // Mois les plus récents d'abord : on s'arrête dès que la limite est atteinte
+        for (Partition p : partitions.descendingMap().values()) {
+            if (out.size() >= limit) break;
+            if (p.end <= from || p.start >= to) continue;
+            IndexSearcher s = p.manager.acquire();
+            try {
+                TopDocs top = s.search(q, limit - out.size(), byTimeDesc);
+                StoredFields stored = s.storedFields();
+                for (ScoreDoc sd : top.scoreDocs) {
+                    out.add(fromDocument(stored.document(sd.doc)));
+                }
+            } finally {
+                p.manager.release(s);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Requêtes les plus fréquentes de la période (regroupées par {@link #queryKey}).
+     */
+    public List<QueryStat> topQueries(long from, long to, String user, int limit) throws IOException {
+        Map<String, long[]> stats = new HashMap<>(); // count, errors, sumOcc, nOcc, sumLat, nLat
+        Query q = filter(from, to, user, null, "SEARCH", null);
+        forEachPartition(from, to, s -> s.search(q, new SimpleCollector() {
+            SortedDocValues keys;
+            SortedDocValues status;
+            NumericDocValues occ;
+            NumericDocValues lat;
+            long[][] perOrd;
+            int errorOrd;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                flush();
+                keys = DocValues.getSorted(context.reader(), "query_key");
+                status = DocValues.getSorted(context.reader(), "status");
+                occ = DocValues.getNumeric(context.reader(), "occurrences");
+                lat = DocValues.getNumeric(context.reader(), "latency");
+                perOrd = new long[keys.getValueCount()][];
+                errorOrd = status.lookupTerm(new BytesRef("ERROR"));
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (!keys.advanceExact(doc)) return;
+                int ord = keys.ordValue();
+                long[] a = perOrd[ord];
+                if (a == null) a = perOrd[ord] = new long[6];
+                a[0]++;
+                if (status.advanceExact(doc) && status.ordValue() == errorOrd) a[1]++;
+                if (occ.advanceExact(doc)) { a[2] += occ.longValue(); a[3]++; }
+                if (lat.advanceExact(doc)) { a[4] += lat.longValue(); a[5]++; }
+            }
+
+            // Compteurs par ordinal dans le segment, convertis en chaînes une seule fois par segment
+            private void flush() throws IOException {
+                if (perOrd == null) return;
+                for (int ord = 0; ord < perOrd.length; ord++) {
+                    long[] a = perOrd[ord];
+                    if (a == null) continue;
+                    long[] total = stats.computeIfAbsent(keys.lookupOrd(ord).utf8ToString(), k -> new long[6]);
+                    for (int i = 0; i < 6; i++) total[i] += a[i];
+                }
+                perOrd = null;
+            }
+
+            @Override
+            public void finish() throws IOException {
+                flush();
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        }));
+
+        return stats.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(limit)
+                .map(e -> {
+                    long[] a = e.getValue();
+                    return new QueryStat(e.getKey(), a[0], a[1], avg(a[2], a[3]), avg(a[4], a[5]));
+                })
+                .toList();
+    }
+
+    /**
+     * Agrégats par intervalle ({@code bucketMs}) sur la période, éventuellement pour un utilisateur / une requête.
+     * @throws IllegalArgumentException si la période compte plus de {@link #MAX_BUCKETS} intervalles
+     */
+    public List<Bucket> stats(long from, long to, long bucketMs, String user, String query) throws IOException {
+        long buckets = Math.max(1, (to - from + bucketMs - 1) / bucketMs);
+        if (buckets > MAX_BUCKETS) {
+            // tronquer ferait disparaître sans bruit les événements de la fin de période
+            throw new IllegalArgumentException("période trop longue pour cet intervalle : " + buckets
+                    + " intervalles (max " + MAX_BUCKETS + ")");
+        }
+        int n = (int) buckets;
+        long[][] acc = new long[n][9]; // searches, searchErrors, uploads, uploadErrors, sumOcc, nOcc, sumLat, nLat, maxLat
+        Query q = filter(from, to, user, query, null, null);
+        forEachPartition(from, to, s -> s.search(q, new SimpleCollector() {
+            NumericDocValues ts;
+            SortedDocValues action;
+            SortedDocValues status;
+            NumericDocValues occ;
+            NumericDocValues lat;
+            int searchOrd;
+            int errorOrd;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                ts = DocValues.getNumeric(context.reader(), "ts");
+                action = DocValues.getSorted(context.reader(), "action");
+                status = DocValues.getSorted(context.reader(), "status");
+                occ = DocValues.getNumeric(context.reader(), "occurrences");
+                lat = DocValues.getNumeric(context.reader(), "latency");
+                searchOrd = action.lookupTerm(new BytesRef("SEARCH"));
+                errorOrd = status.lookupTerm(new BytesRef("ERROR"));
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (!ts.advanceExact(doc)) return;
+                int b = (int) ((ts.longValue() - from) / bucketMs);
+                if (b < 0 || b >= n) return;
+                long[] a = acc[b];
+                boolean search = action.advanceExact(doc) && action.ordValue() == searchOrd;
+                boolean error = status.advanceExact(doc) && status.ordValue() == errorOrd;
+                a[search ? 0 : 2]++;
+                if (error) a[search ? 1 : 3]++;
+                if (occ.advanceExact(doc)) { a[4] += occ.longValue(); a[5]++; }
+                if (lat.advanceExact(doc)) {
+                    a[6] += lat.longValue();
+                    a[7]++;
+                    a[8] = Math.max(a[8], lat.longValue());
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        }));
+
+        List<Bucket> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long[] a = acc[i];
+            out.add(new Bucket(from + i * bucketMs, a[0], a[1], a[2], a[3], avg(a[4], a[5]), avg(a[6], a[7]), a[8]));
+        }
+        return out;
+    }
+
+    /** Nombre d'événements indexés (visibles). */
+    public long size() throws IOException {
+        long total = 0;
+        for (Partition p : partitions.values()) {
+            IndexSearcher s = p.manager.acquire();
+            try {
+                total += s.getIndexReader().numDocs();
+            } finally {
+                p.manager.release(s);
+            }
+        }
+        return total;
+    }
+
+    @FunctionalInterface
+    private interface SearcherTask {
+        void run(IndexSearcher searcher) throws IOException;
+    }
+
+    private void forEachPartition(long from, long to, SearcherTask task) throws IOException {
+        for (Partition p : partitions.values()) {
+            if (p.end <= from || p.start >= to) continue; // mois hors période : jamais ouvert
+            IndexSearcher s = p.manager.acquire();
+            try {
+                task.run(s);
+            } finally {
+                p.manager.release(s);
+            }
+        }
+    }
+
+    private static Query filter(long from, long to, String user, String query, String action, String status) {
+        BooleanQuery.Builder b = new BooleanQuery.Builder()
+                .add(LongPoint.newRangeQuery("ts", from, to - 1), BooleanClause.Occur.FILTER);
+        if (user != null && !user.isBlank()) b.add(new TermQuery(new Term("user", truncate(user))), BooleanClause.Occur.FILTER);
+        if (query != null && !query.isBlank()) b.add(new TermQuery(new Term("query_key", truncate(queryKey(query)))), BooleanClause.Occur.FILTER);
+        if (action != null) b.add(new TermQuery(new Term("action", action)), BooleanClause.Occur.FILTER);
+        if (status != null) b.add(new TermQuery(new Term("status", status)), BooleanClause.Occur.FILTER);
+        return new ConstantScoreQuery(b.build());
+    }
+
+    private static HistoryEntry fromDocument(Document d) {
+        return new HistoryEntry(
+                d.getField("ts").numericValue().longValue(),
+                d.get("user"),
+                d.get("action"),
+                d.get("status"),
+                d.get("query"),
+                d.get("filename"),
+                number(d, "size"),
+                d.get("url"),
+                d.getField("occurrences") == null ? null : d.getField("occurrences").numericValue().intValue(),
+                number(d, "latency"),
+                d.get("error"));
+    }
+
+    private static Long number(Document d, String field) {
+        IndexableField f = d.getField(field);
+        return f == null ? null : f.numericValue().longValue();
+    }
+
+    private static double avg(long sum, long n) {
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /* ----------------- Reprise des anciens journaux ----------------- */
+
+    private static final Pattern AUDIT_LINE = Pattern.compile(
+            "^(\\S+ \\S+?) \\| user=(.*?) \\| action=(\\w+) \\| status=(\\w+)(.*)$");
+    private static final Pattern AUDIT_FIELD = Pattern.compile(
+            " \\| (query=\"(.*?)\"(?= \\| |$)|fichier=([^|]*?)(?= \\| |$)|taille=(\\d+) octets|url=([^|]*?)(?= \\| |$)|occurrences=(\\d+)|duree=(\\d+)ms|erreur=(.*))");
+    private static final Pattern LEGACY_SEARCH = Pattern.compile("^(\\S+) \\| '(.*?)' -> \\[(.*)]$", Pattern.DOTALL);
+    private static final Pattern LEGACY_HIT = Pattern.compile("\\.pdf : page \\d+");
+    private static final Pattern RECORD_START = Pattern.compile("\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:");
+    private static final DateTimeFormatter AUDIT_TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
+
+    /**
+     * Importe logs/audit*.log et l'ancien recherches.log (événements antérieurs à {@code before} seulement :
+     * les suivants arrivent déjà par {@link AuditLogService}).
+     * <p>
+     * Rejouable : les événements antérieurs à {@code before} déjà présents (import interrompu, ou historique d'une
+     * version sans marqueur, dont les événements sont tous dans les journaux) sont d'abord supprimés. Le marqueur
+     * {@link #IMPORT_DONE} n'est écrit qu'après le commit du dernier événement importé.
+     */
+    private void importLegacy(Path auditDir, Path searchesLog, long before) {
+        long t0 = System.nanoTime();
+        long imported = 0;
+        try {
+            Query earlier = LongPoint.newRangeQuery("ts", Long.MIN_VALUE, before - 1);
+            for (Partition p : partitions.values()) {
+                if (p.start < before) p.writer.deleteDocuments(earlier);
+            }
+            if (Files.isDirectory(auditDir)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(auditDir, "audit*.log")) {
+                    for (Path f : files) imported += importFile(f, before, HistoryStore::parseAuditLine);
+                }
+            }
+            if (Files.isRegularFile(searchesLog)) {
+                imported += importFile(searchesLog, before, HistoryStore::parseLegacySearch);
+            }
+            synchronized (partitions) {
+                for (Partition p : partitions.values()) {
+                    p.writer.commit();
+                    p.manager.maybeRefresh();
+                }
+            }
+            writeMarker(root.resolve(IMPORT_DONE), Long.toString(imported));
+            System.out.println("[History] " + imported + " événements importés des anciens journaux en "
+                    + (System.nanoTime() - t0) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            System.err.println("[History] import des anciens journaux interrompu, historique incomplet avant le "
+                    + Instant.ofEpochMilli(before) + " : repris au prochain démarrage (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Un événement par enregistrement ; un enregistrement commence par une date et peut courir sur plusieurs
+     * lignes (recherches.log contient le texte des résultats, sauts de ligne compris).
+     */
+    private long importFile(Path file, long before, java.util.function.Function<String, HistoryEntry> parser) throws IOException {
+        long n = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StringBuilder record = new StringBuilder();
+            String line;
+            do {
+                line = in.readLine();
+                if (line != null && !RECORD_START.matcher(line).lookingAt()) {
+                    record.append('\n').append(line);
+                    continue;
+                }
+                if (!record.isEmpty()) {
+                    HistoryEntry e;
+                    try {
+                        e = parser.apply(record.toString().strip()); // anciens journaux écrits sous Windows (CRLF)
+                    } catch (RuntimeException ignored) {
+                        e = null; // enregistrement illisible
+                    }
+                    if (e != null && e.getTimestamp() < before) {
+                        partitionFor(e.getTimestamp()).writer.addDocument(toDocument(e));
+                        n++;
+                    }
+                    record.setLength(0);
+                }
+                if (line != null) record.append(line);
+            } while (line != null);
+        }
+        return n;
+    }
+
+    static HistoryEntry parseAuditLine(String line) {
+        Matcher m = AUDIT_LINE.matcher(line);
+        if (!m.matches()) return null;
+        long ts = OffsetDateTime.parse(m.group(1), AUDIT_TS).toInstant().toEpochMilli();
+        String query = null, filename = null, url = null, error = null;
+        Long size = null, latency = null;
+        Integer occurrences = null;
+        Matcher f = AUDIT_FIELD.matcher(m.group(5));
+        while (f.find()) {
+            if (f.group(2) != null) query = f.group(2);
+            else if (f.group(3) != null) filename = f.group(3);
+            else if (f.group(4) != null) size = Long.parseLong(f.group(4));
+            else if (f.group(5) != null) url = f.group(5);
+            else if (f.group(6) != null) occurrences = Integer.parseInt(f.group(6));
+            else if (f.group(7) != null) latency = Long.parseLong(f.group(7));
+            else if (f.group(8) != null) error = f.group(8);
+        }
+        return new HistoryEntry(ts, m.group(2), m.group(3), m.group(4), query, filename, size, url, occurrences, latency, error);
+    }
+
+    static HistoryEntry parseLegacySearch(String line) {
+        Matcher m = LEGACY_SEARCH.matcher(line);
+        if (!m.matches()) return null;
+        long ts = LocalDateTime.parse(m.group(1)).atZone(PARIS).toInstant().toEpochMilli();
+        // Selon l'époque : "[152, 58]" (pages) ou "[fichier.pdf : page 152 ..., ...]"
+        String hits = m.group(3).trim();
+        int occurrences = (int) LEGACY_HIT.matcher(hits).results().count();
+        if (occurrences == 0 && !hits.isEmpty()) occurrences = hits.split(", ").length;
+        return new HistoryEntry(ts, "Maxime", "SEARCH", "OK", m.group(2), null, null, null, occurrences, null, null);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (Partition p : partitions.values()) {
+            p.writer.commit();
+            p.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package pdf.archi_web.services;
+
+import org.springframework.stereotype.Component;
+import pdf.archi_web.DTO.IndexStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Avancement de l'indexation de démarrage, qui tourne en arrière-plan pendant que l'application sert déjà.
+ */
+@Component
+public class IndexingProgress {
+
+    public enum State { PENDING, RUNNING, READY, FAILED }
+
+    private volatile State state = State.PENDING;
+    private volatile long startedAtNanos;
+    private volatile long finishedAtNanos;
+    private volatile String error;
+
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong bytesTotal = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong pagesDone = new AtomicLong();
+
+    public void start() {
+        startedAtNanos = System.nanoTime();
+        state = State.RUNNING;
+    }
+
+    public void fileQueued(long bytes) {
+        filesTotal.incrementAndGet();
+        bytesTotal.addAndGet(bytes);
+    }
+
+    public void fileDone(long bytes, int pages) {
+        filesDone.incrementAndGet();
+        bytesDone.addAndGet(bytes);
+        pagesDone.addAndGet(pages);
+    }
+
+    public void fileFailed(long bytes) {
+        filesFailed.incrementAndGet();
+        bytesDone.addAndGet(bytes);
+    }
+
+    public void ready() {
+        finishedAtNanos = System.nanoTime();
+        state = State.READY;
+    }
+
+    public void failed(String message) {
+        finishedAtNanos = System.nanoTime();
+        error = message;
+        state = State.FAILED;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public IndexStatus snapshot() {
+        State s = state;
+        long end = (s == State.READY || s == State.FAILED) ? finishedAtNanos : System.nanoTime();
+        long elapsedMs = s == State.PENDING ? 0 : (end - startedAtNanos) / 1_000_000;
+
+        // ETA au prorata des octets déjà traités (les PDF n'ont pas tous la même taille)
+        Long etaMs = null;
+        long total = bytesTotal.get();
+        long done = bytesDone.get();
+        if (s == State.RUNNING && done > 0 && total > done) {
+            etaMs = elapsedMs * (total - done) / done;
+        } else if (s == State.READY) {
+            etaMs = 0L;
+        }
+
+        return new IndexStatus(s.name(), s == State.READY,
+                filesDone.get(), filesFailed.get(), filesTotal.get(),
+                pagesDone.get(), elapsedMs, etaMs, error);
+    }
+}
@@ -0,0 +1,525 @@
+package pdf.archi_web.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.IndexManifest;
+import pdf.archi_web.IndexPublisher;
+import pdf.archi_web.IndexReplica;
+import pdf.archi_web.IndexRevision;
+import pdf.archi_web.IndexShards;
+import pdf.archi_web.IndexStorage;
+import pdf.archi_web.IndexingPipeline;
+import pdf.archi_web.PageTextStore;
+import pdf.archi_web.PdfMemoryBudget;
+import pdf.archi_web.PdfAnalyzer;
+import pdf.archi_web.ShardedSearcherManager;
+import pdf.archi_web.Suggester;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unique propriétaire des IndexWriter de l'application, un par shard (index.shards, cf. {@link IndexShards}).
+ * Tous les appelants (démarrage, upload) y ajoutent leurs documents ; les commits sont regroupés
+ * (tous les N documents ou toutes les X ms) et les searchers NRT sont rafraîchis à la demande.
+ * Les requêtes sont réparties entre les shards sur search.parallelism threads.
+ * <p>
+ * index.role=primary (défaut) : chaque commit est publié aux répliques ({@link IndexPublisher}).
+ * index.role=replica : pas de writer, l'index est copié depuis le primaire ({@link #replicate}) et
+ * les searchers sont rouverts sur les commits reçus ; toute écriture lève {@link ReadOnlyException}.
+ */
+@Service
+public class IndexingService {
+
+    /** À incrémenter à chaque changement de la structure des documents : force une réindexation complète. */
+    public static final int SCHEMA_VERSION = 5;
+
+    /** Écriture demandée à une réplique : les PDF s'envoient au primaire. */
+    public static class ReadOnlyException extends IllegalStateException {
+        public ReadOnlyException() {
+            super("nœud réplique : index en lecture seule, envoyer les PDF au primaire");
+        }
+    }
+
+    private final Directory[] directories;
+    private final Analyzer analyzer;
+    private final IndexWriter[] writers;
+    private final ExecutorService searchExecutor;
+    private final ShardedSearcherManager searcherManager;
+    private final IndexingPipeline pipeline;
+    private final IndexManifest manifest;
+    private final PageTextStore textStore;
+    private final Suggester suggester;
+    private final Path textDir;
+    private final boolean persistent;
+    private final int shards;
+    private final String indexId;
+    private final IndexPublisher publisher;
+    private final IndexReplica replica;
+
+    private final int commitMaxDocs;
+    private final AtomicInteger pendingDocs = new AtomicInteger();
+    private final ScheduledExecutorService commitScheduler;
+
+    private final Timer documentTimer;
+    private final Timer commitTimer;
+
+    public IndexingService(
+            MeterRegistry registry,
+            @Value("${index.role:primary}") String role,
+            @Value("${index.dir:index}") String indexDir,
+            @Value("${index.store:mmap}") String store,
+            @Value("${index.mmap.preload:tim,tip,tmd,nvd,nvm}") String preload,
+            @Value("${index.memory.off-heap:false}") boolean offHeap,
+            @Value("${index.shards:4}") int shards,
+            @Value("${search.parallelism:0}") int parallelism,
+            @Value("${index.commit.max-docs:1000}") int commitMaxDocs,
+            @Value("${index.commit.interval-ms:2000}") long commitIntervalMs,
+            @Value("${index.ram-buffer-mb:64}") double ramBufferMb,
+            @Value("${index.pipeline.workers:0}") int workers,
+            @Value("${index.pipeline.writers:2}") int writers,
+            @Value("${index.pipeline.queue-capacity:256}") int queueCapacity,
+            @Value("${index.pipeline.pages-per-task:16}") int pagesPerTask,
+            @Value("${index.pipeline.max-open-mb:256}") long maxOpenMb,
+            @Value("${index.pipeline.scratch-memory-mb:16}") long scratchMemoryMb,
+            @Value("${index.pipeline.report-interval-ms:5000}") long reportIntervalMs
+    ) throws IOException {
+        IndexStorage storage = IndexStorage.parse(store);
+        Set<String> preloaded = Arrays.stream(preload.split(","))
+                .map(String::trim)
+                .filter(e -> !e.isEmpty())
+                .collect(Collectors.toSet());
+        if (shards < 1) throw new IllegalArgumentException("index.shards doit être >= 1: " + shards);
+        boolean replicaRole = switch (role.trim().toLowerCase()) {
+            case "primary" -> false;
+            case "replica" -> true;
+            default -> throw new IllegalArgumentException("index.role inconnu: " + role + " (primary ou replica)");
+        };
+        this.analyzer = new PdfAnalyzer();
+        this.commitMaxDocs = commitMaxDocs;
+        this.directories = new Directory[shards];
+        for (int i = 0; i < shards; i++) {
+            directories[i] = storage.open(IndexShards.path(Path.of(indexDir), i), preloaded, offHeap);
+        }
+        this.shards = shards;
+        this.persistent = storage.isPersistent();
+        this.textDir = persistent ? Path.of(indexDir) : Files.createTempDirectory("pagetext");
+        Directory suggestDir = storage.open(Path.of(indexDir, "suggest"), Set.of(), offHeap);
+
+        // parallelism <= 0 : un thread par cœur, 1 : tout sur le thread de la requête
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger searchThreads = new AtomicInteger();
+        this.searchExecutor = threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "search-shard-" + searchThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }) : null;
+
+        if (replicaRole) {
+            // réplique : readers sur les commits copiés du primaire, texte et suggestions en lecture seule
+            this.writers = null;
+            this.indexId = null;
+            this.publisher = null;
+            this.pipeline = null;
+            this.commitScheduler = null;
+            this.manifest = IndexManifest.inMemory();
+            this.textStore = PageTextStore.readOnly(textDir);
+            this.suggester = new Suggester(suggestDir);
+            this.searcherManager = new ShardedSearcherManager(directories, searchExecutor);
+            Map<String, Directory> local = new LinkedHashMap<>();
+            for (int i = 0; i < shards; i++) local.put(IndexShards.name(i), directories[i]);
+            local.put("suggest", suggestDir);
+            this.replica = new IndexReplica(local, textDir, textStore);
+            System.out.println("[Index] réplique, stockage " + storage + (persistent ? " sous " + Path.of(indexDir).toAbsolutePath() : "")
+                    + ", " + shards + " shard(s), recherche sur " + (searchExecutor == null ? 1 : threads) + " thread(s)");
+        } else {
+            this.replica = null;
+            this.writers = new IndexWriter[shards];
+            SnapshotDeletionPolicy[] snapshots = new SnapshotDeletionPolicy[shards];
+            for (int i = 0; i < shards; i++) {
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                // tampon réparti entre les shards (moins de flushs => moins de petits segments)
+                config.setRAMBufferSizeMB(Math.max(ramBufferMb / shards, 16));
+                if (storage == IndexStorage.MMAP && !preloaded.isEmpty()) {
+                    // un segment en fichier composé (.cfs) ne se précharge qu'en entier : fichiers séparés
+                    config.setUseCompoundFile(false);
+                    config.getMergePolicy().setNoCFSRatio(0.0);
+                }
+                // commits publiés retenus tant qu'une réplique peut les copier
+                snapshots[i] = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+                config.setIndexDeletionPolicy(snapshots[i]);
+                this.writers[i] = new IndexWriter(directories[i], config);
+            }
+
+            // Texte des pages à côté de l'index (en mémoire : dossier temporaire, vidé à l'arrêt) ;
+            // la génération en service est celle du dernier commit, comme l'identifiant de l'index
+            Map<String, String> commitData = new HashMap<>();
+            Iterable<Map.Entry<String, String>> live = this.writers[0].getLiveCommitData();
+            if (live != null) live.forEach(e -> commitData.put(e.getKey(), e.getValue()));
+            this.textStore = new PageTextStore(textDir, PageTextStore.generation(commitData));
+            this.indexId = commitData.getOrDefault(IndexRevision.ID_KEY, UUID.randomUUID().toString());
+            setCommitData();
+
+            // suggestions de saisie : petit index à part, même type de stockage
+            this.suggester = new Suggester(suggestDir);
+
+            // readers NRT : voient les documents ajoutés avant même leur commit
+            this.searcherManager = new ShardedSearcherManager(this.writers, searchExecutor);
+            // workers <= 0 : un extracteur par cœur (extraction PDFBox = CPU)
+            int extractors = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+            PdfMemoryBudget budget = new PdfMemoryBudget(maxOpenMb << 20, scratchMemoryMb << 20);
+            this.pipeline = new IndexingPipeline(this.writers, textStore, suggester, budget, extractors, writers,
+                    queueCapacity, pagesPerTask, reportIntervalMs);
+            // index en mémoire : manifeste vide à chaque démarrage, donc réindexation complète
+            this.manifest = persistent
+                    ? IndexManifest.load(Path.of(indexDir, "manifest.json"))
+                    : IndexManifest.inMemory();
+            this.publisher = new IndexPublisher(textDir, indexId);
+            for (int i = 0; i < shards; i++) {
+                publisher.add(IndexShards.name(i), directories[i], IndexPublisher.Snapshots.of(snapshots[i]));
+            }
+            publisher.add("suggest", suggestDir, suggester.snapshots());
+            System.out.println("[Index] stockage " + storage + (storage.isPersistent() ? " sous " + Path.of(indexDir).toAbsolutePath() : "")
+                    + ", " + shards + " shard(s), recherche sur " + (searchExecutor == null ? 1 : threads) + " thread(s)"
+                    + (storage == IndexStorage.MMAP && !preloaded.isEmpty() ? ", préchargé : " + preloaded : ""));
+
+            this.commitScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "index-commit");
+                t.setDaemon(true);
+                return t;
+            });
+            commitScheduler.scheduleWithFixedDelay(this::commitIfPending,
+                    commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        // Métriques d'indexation (même format que SearchMetrics)
+        this.documentTimer = SearchMetrics.timer(registry, "index.document", "Indexation d'un PDF, de la soumission à l'écriture");
+        this.commitTimer = SearchMetrics.timer(registry, "index.commit", "Durée d'un commit (IndexWriter + manifeste + refresh)");
+        if (pipeline != null) {
+            FunctionCounter.builder("index.pages.extracted", pipeline, IndexingPipeline::pagesExtracted)
+                    .description("Pages extraites par le pipeline")
+                    .baseUnit("pages")
+                    .register(registry);
+            Gauge.builder("index.pipeline.queue", pipeline, IndexingPipeline::queueDepth)
+                    .description("Pages en attente d'écriture dans le pipeline")
+                    .register(registry);
+            Gauge.builder("index.pdf.open", pipeline, IndexingPipeline::openPdfBytes)
+                    .description("Octets de PDF ouverts par les extracteurs (budget index.pipeline.max-open-mb)")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("index.pdf.waiting", pipeline, IndexingPipeline::pdfsWaiting)
+                    .description("Ouvertures de PDF en attente de budget mémoire")
+                    .register(registry);
+        }
+        Gauge.builder("index.size", this, IndexingService::indexSizeBytes)
+                .description("Taille de l'index sur disque")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("index.pagetext.size", textStore, PageTextStore::sizeBytes)
+                .description("Taille du fichier de texte des pages (génération courante)")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("suggest.entries", this, IndexingService::suggestionCount)
+                .description("Suggestions de saisie disponibles")
+                .register(registry);
+        Gauge.builder("index.segments", this, IndexingService::segmentCount)
+                .description("Segments du reader de recherche courant")
+                .register(registry);
+    }
+
+    /**
+     * Confie le PDF au pipeline d'extraction parallèle. Le commit est différé (regroupé) ;
+     * appeler {@link #refresh()} pour rendre le document visible tout de suite.
+     * @return future complétée avec le nombre de documents (pages) ajoutés
+     */
+    public CompletableFuture<Integer> submit(Path pdf) {
+        return submit(pdf, null);
+    }
+
+    /**
+     * @param sha256 empreinte déjà calculée (upload), null pour la calculer après l'extraction
+     */
+    public CompletableFuture<Integer> submit(Path pdf, String sha256) {
+        checkWritable();
+        Timer.Sample sample = Timer.start();
+        return pipeline.submit(pdf).whenComplete((added, e) -> sample.stop(documentTimer)).thenApply(added -> {
+            try {
+                if (sha256 == null) manifest.record(pdf);
+                else manifest.record(pdf, sha256);
+                if (pendingDocs.addAndGet(added) >= commitMaxDocs) {
+                    commit();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return added;
+        });
+    }
+
+    /**
+     * Version bloquante de {@link #submit(Path)}.
+     */
+    public int indexPdf(Path pdf) throws IOException {
+        try {
+            return submit(pdf).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException u ? u.getCause() : e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Indexation échouée: " + pdf.getFileName(), cause);
+        }
+    }
+
+    /**
+     * Vide l'index et le manifeste (réindexation complète). Effectif pour les lecteurs au prochain refresh.
+     */
+    public void deleteAll() throws IOException {
+        checkWritable();
+        for (IndexWriter writer : writers) writer.deleteAll();
+        textStore.reset();
+        suggester.reset();
+        setCommitData();
+        manifest.reset(SCHEMA_VERSION, shards);
+        pendingDocs.incrementAndGet();
+    }
+
+    /**
+     * Supprime toutes les pages d'un PDF qui n'existe plus sur disque.
+     */
+    public void deleteFile(String filename) throws IOException {
+        checkWritable();
+        writers[IndexShards.shardOf(filename, shards)].deleteDocuments(new Term("filename", filename));
+        manifest.remove(filename);
+        pendingDocs.incrementAndGet();
+    }
+
+    /**
+     * Vrai si le PDF est déjà indexé avec le même contenu (d'après le manifeste).
+     */
+    public boolean isUpToDate(Path pdf) throws IOException {
+        return !manifest.needsIndexing(pdf);
+    }
+
+    /**
+     * L'index sur disque a été construit avec un autre schéma ou découpage (ou sans manifeste) : il faut tout reconstruire.
+     */
+    public boolean needsFullRebuild() {
+        return manifest.getSchemaVersion() != SCHEMA_VERSION || manifest.getShards() != shards;
+    }
+
+    /**
+     * PDF déjà indexé avec ce contenu, s'il y en a un.
+     */
+    public Optional<Path> findIndexed(String sha256) {
+        return manifest.findBySha256(sha256);
+    }
+
+    /**
+     * Nombre de pages (documents) indexées pour ce fichier, d'après le reader courant.
+     */
+    public int pageCount(String filename) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return searcher.count(new TermQuery(new Term("filename", filename)));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    public Set<String> indexedFilenames() {
+        return manifest.filenames();
+    }
+
+    /**
+     * Hook NRT : rend visibles les ajouts non encore commités.
+     */
+    public void refresh() throws IOException {
+        searcherManager.maybeRefresh();
+    }
+
+    public synchronized void commit() throws IOException {
+        checkWritable();
+        int n = pendingDocs.getAndSet(0);
+        long start = System.nanoTime();
+        textStore.sync(); // le commit ne doit référencer que du texte déjà sur disque
+        for (IndexWriter writer : writers) writer.commit();
+        textStore.dropRetired();
+        suggester.commit();
+        manifest.save(); // après le commit : au pire un fichier est réindexé (remplacement idempotent)
+        searcherManager.maybeRefresh();
+        try {
+            publisher.publish();
+        } catch (IOException e) {
+            System.err.println("[Replication] publication échouée: " + e.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+        commitTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        System.out.println("[Index] commit de " + n + " documents en " + elapsed / 1_000_000 + " ms");
+    }
+
+    public boolean isReplica() {
+        return replica != null;
+    }
+
+    /**
+     * Réplique : copie ce qui manque pour atteindre la révision du primaire, puis rouvre les searchers
+     * et les suggestions sur les commits reçus.
+     * @return false si la révision était déjà appliquée
+     */
+    public synchronized boolean replicate(IndexRevision revision, IndexReplica.Source primary) throws IOException {
+        if (replica == null) throw new IllegalStateException("nœud primaire : rien à répliquer");
+        if (!replica.update(revision, primary)) return false;
+        searcherManager.maybeRefreshBlocking(); // avant le nettoyage : plus aucun nouveau reader sur l'ancien commit
+        suggester.reopen();
+        replica.prune();
+        return true;
+    }
+
+    private void checkWritable() {
+        if (replica != null) throw new ReadOnlyException();
+    }
+
+    private void commitIfPending() {
+        if (pendingDocs.get() == 0) return;
+        try {
+            commit();
+        } catch (Exception e) {
+            System.err.println("[Index] commit échoué: " + e.getMessage());
+        }
+    }
+
+    private double indexSizeBytes() {
+        long total = 0;
+        try {
+            for (Directory directory : directories) {
+                for (String file : directory.listAll()) {
+                    try {
+                        total += directory.fileLength(file);
+                    } catch (IOException e) {
+                        // fichier supprimé entre listAll et fileLength (fusion de segments)
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+        return total;
+    }
+
+    /** Génération du texte des pages et identifiant de l'index, enregistrés avec le prochain commit de chaque shard. */
+    private void setCommitData() {
+        Map<String, String> commitData = Map.of(PageTextStore.COMMIT_KEY, String.valueOf(textStore.generation()),
+                IndexRevision.ID_KEY, indexId);
+        for (IndexWriter writer : writers) writer.setLiveCommitData(commitData.entrySet());
+    }
+
+    private double suggestionCount() {
+        try {
+            return suggester.size();
+        } catch (IOException | AlreadyClosedException e) {
+            return Double.NaN;
+        }
+    }
+
+    private double segmentCount() {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().leaves().size();
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException | AlreadyClosedException e) {
+            return Double.NaN;
+        }
+    }
+
+    public ReferenceManager<IndexSearcher> getSearcherManager() {
+        return searcherManager;
+    }
+
+    public PageTextStore getPageTextStore() {
+        return textStore;
+    }
+
+    public Suggester getSuggester() {
+        return suggester;
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public IndexingPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /** Publication aux répliques (null sur une réplique). */
+    public IndexPublisher getPublisher() {
+        return publisher;
+    }
+
+    /** Copie locale de l'index du primaire (null sur le primaire). */
+    public IndexReplica getReplica() {
+        return replica;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (replica == null) {
+            pipeline.close();
+            commitScheduler.shutdownNow();
+        }
+        searcherManager.close();
+        if (searchExecutor != null) searchExecutor.shutdownNow();
+        if (replica == null) {
+            publisher.close();
+            textStore.sync();
+            for (IndexWriter writer : writers) writer.close(); // commit des ajouts restants
+            manifest.save();
+        }
+        suggester.close();
+        textStore.close();
+        for (Directory directory : directories) directory.close();
+        if (!persistent) {
+            try (Stream<Path> files = Files.list(textDir)) {
+                for (Path f : files.toList()) Files.deleteIfExists(f);
+            }
+            Files.deleteIfExists(textDir);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package pdf.archi_web.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.IndexReplica;
+import pdf.archi_web.IndexRevision;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Réplique (index.role=replica) : interroge le primaire toutes les replication.poll-ms et applique
+ * chaque nouvelle révision publiée (cf. ReplicationController). Seuls les fichiers manquants sont copiés ;
+ * la réplique est prête (/api/index/ready) dès la première révision appliquée.
+ */
+@Service
+public class ReplicationService implements IndexReplica.Source {
+
+    private final IndexingService indexingService;
+    private final IndexingProgress progress;
+    private final ObjectMapper mapper;
+    private final String primaryUrl;
+    private final long pollMillis;
+    private final HttpClient http;
+    private final Timer updateTimer;
+    private final ScheduledExecutorService scheduler;
+    // une seule trace par panne du primaire, pas une par tentative
+    private volatile boolean failing;
+
+    public ReplicationService(IndexingService indexingService, IndexingProgress progress, ObjectMapper mapper,
+                              MeterRegistry registry,
+                              @Value("${replication.primary-url:http://localhost:8080}") String primaryUrl,
+                              @Value("${replication.poll-ms:1000}") long pollMillis) {
+        this.indexingService = indexingService;
+        this.progress = progress;
+        this.mapper = mapper;
+        this.primaryUrl = primaryUrl.replaceAll("/+$", "") + "/api/replication";
+        this.pollMillis = pollMillis;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "index-replica");
+            t.setDaemon(true);
+            return t;
+        });
+        this.updateTimer = SearchMetrics.timer(registry, "replication.update", "Application d'une révision du primaire (copie + refresh)");
+        IndexReplica replica = indexingService.getReplica();
+        if (replica != null) {
+            FunctionCounter.builder("replication.bytes", replica, IndexReplica::bytesCopied)
+                    .description("Octets reçus du primaire")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("replication.revision", replica, r -> r.applied() == null ? 0 : r.applied().version())
+                    .description("Version de la dernière révision appliquée")
+                    .register(registry);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!indexingService.isReplica()) return;
+        System.out.println("[Replica] primaire " + primaryUrl + ", interrogé toutes les " + pollMillis + " ms");
+        progress.start();
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        try {
+            HttpResponse<byte[]> response = http.send(request("/revision"), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 204) return; // primaire sans commit pour l'instant
+            if (response.statusCode() != 200) throw new IOException("HTTP " + response.statusCode() + " pour /revision");
+            IndexRevision revision = mapper.readValue(response.body(), IndexRevision.class);
+
+            long start = System.nanoTime();
+            long before = indexingService.getReplica().bytesCopied();
+            if (indexingService.replicate(revision, this)) {
+                long elapsed = System.nanoTime() - start;
+                updateTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                System.out.println("[Replica] révision " + revision.version() + " appliquée : "
+                        + (indexingService.getReplica().bytesCopied() - before) / 1024 + " Ko copiés en "
+                        + elapsed / 1_000_000 + " ms");
+            }
+            if (!progress.isReady()) progress.ready();
+            if (failing) {
+                failing = false;
+                System.out.println("[Replica] synchronisation rétablie");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!failing) System.err.println("[Replica] synchronisation échouée (nouvel essai toutes les "
+                    + pollMillis + " ms): " + e.getMessage());
+            failing = true;
+        }
+    }
+
+    @Override
+    public InputStream file(String index, String name) throws IOException {
+        return get("/files/" + encode(index) + "/" + encode(name));
+    }
+
+    @Override
+    public InputStream text(String file, long from) throws IOException {
+        return get("/text/" + encode(file) + "?from=" + from);
+    }
+
+    private InputStream get(String path) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = http.send(request(path), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("copie interrompue: " + path);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("HTTP " + response.statusCode() + " pour " + path);
+        }
+        return response.body();
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create(primaryUrl + path)).GET().build();
+    }
+
+    private static String encode(String segment) {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,222 @@
+package pdf.archi_web.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import pdf.archi_web.DTO.CompactResults;
+import pdf.archi_web.DTO.SearchResult;
+import pdf.archi_web.PdfSearcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Regroupe les résultats d'une demande en trames WebSocket : une trame part dès que le lot atteint
+ * sa taille maximale ou que la fenêtre de temps est écoulée. Le tout premier résultat part seul,
+ * immédiatement, pour ne pas retarder le temps jusqu'au premier résultat.
+ * <p>
+ * La fenêtre part du premier résultat mis en attente : avec un {@code timer}, le lot est envoyé à l'échéance même
+ * si le résultat suivant tarde (lot de pages lu par searchAfter, texte d'une page à décoder). Sans timer, elle
+ * n'est vérifiée qu'à chaque ajout. {@link #flush()} puis {@link #close()} doivent être appelés en fin de demande.
+ * <p>
+ * Les trames sont sérialisées ici (et non par le convertisseur du template) pour en connaître la taille.
+ */
+public class ResultBatcher implements PdfSearcher.SearchResultCallback {
+
+    /** Encodage des trames de résultats, choisi par le client. */
+    public enum Format {
+        /** Une trame JSON par résultat (protocole historique). */
+        SINGLE,
+        /** Tableau JSON de résultats. */
+        BATCH,
+        /** {@link CompactResults} : fichiers décrits une seule fois par recherche. */
+        COMPACT;
+
+        public static Format parse(String value, Format defaultFormat) {
+            if (value == null || value.isBlank()) return defaultFormat;
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultFormat;
+            }
+        }
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper mapper;
+    private final String destination;
+    private final Format format;
+    private final int batchSize;
+    private final long flushNanos;
+    // Numéros des fichiers déjà décrits au client pour cette recherche (mode compact)
+    private final Map<String, Integer> fileIds;
+    private final ScheduledExecutorService timer;
+
+    // Le thread de recherche et l'échéance du timer envoient tour à tour ; ReentrantLock : thread virtuel
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<SearchResult> buffer = new ArrayList<>();
+    private ScheduledFuture<?> deadline;
+    private boolean closed;
+    private long lastFlush = System.nanoTime();
+    private int frames;
+    private long bytes;
+    private long firstSendNanos;
+
+    public ResultBatcher(SimpMessagingTemplate messagingTemplate, ObjectMapper mapper, String destination, Format format,
+                         int batchSize, long flushMillis, Map<String, Integer> fileIds) {
+        this(messagingTemplate, mapper, destination, format, batchSize, flushMillis, fileIds, null);
+    }
+
+    /**
+     * @param timer exécute l'envoi d'un lot dont la fenêtre est écoulée (null : fenêtre vérifiée à l'ajout seulement)
+     */
+    public ResultBatcher(SimpMessagingTemplate messagingTemplate, ObjectMapper mapper, String destination, Format format,
+                         int batchSize, long flushMillis, Map<String, Integer> fileIds, ScheduledExecutorService timer) {
+        this.messagingTemplate = messagingTemplate;
+        this.mapper = mapper;
+        this.destination = destination;
+        this.format = format;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = flushMillis * 1_000_000L;
+        this.fileIds = fileIds;
+        this.timer = timer;
+    }
+
+    @Override
+    public void onResult(SearchResult result) {
+        lock.lock();
+        try {
+            if (format == Format.SINGLE) {
+                send(result);
+                return;
+            }
+            buffer.add(result);
+            if (frames == 0 || buffer.size() >= batchSize || System.nanoTime() - lastFlush >= flushNanos) {
+                flush();
+            } else if (buffer.size() == 1 && timer != null && !closed) {
+                deadline = timer.schedule(this::flushDue, flushNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envoie le lot en attente (sans effet s'il est vide).
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            if (buffer.isEmpty()) return;
+            send(format == Format.COMPACT ? compact() : List.copyOf(buffer));
+            buffer.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fin de la demande : plus aucune trame ne part, même à l'échéance d'un lot (le lot en attente est abandonné,
+     * appeler {@link #flush()} avant pour l'envoyer). HAS_MORE/COMPLETED peuvent partir ensuite.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            buffer.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Nombre de trames de résultats envoyées. */
+    public int frames() {
+        lock.lock();
+        try {
+            return frames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Octets de résultats envoyés (corps JSON des trames). */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Instant (System.nanoTime) de la première trame, 0 si aucune. */
+    public long firstSendNanos() {
+        lock.lock();
+        try {
+            return firstSendNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // échéance du timer : le lot a pu partir entre-temps (taille atteinte, flush, close)
+    private void flushDue() {
+        lock.lock();
+        try {
+            if (!closed) flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CompactResults compact() {
+        List<CompactResults.FileRef> files = new ArrayList<>();
+        List<Object[]> hits = new ArrayList<>(buffer.size());
+        for (SearchResult r : buffer) {
+            Integer id = fileIds.get(r.getFilename());
+            if (id == null) {
+                id = fileIds.size();
+                fileIds.put(r.getFilename(), id);
+                files.add(new CompactResults.FileRef(id, r.getFilename(), "/pdf/" + r.getFilename()));
+            }
+            hits.add(new Object[]{id, r.getPage(), r.getParagraph(), r.getLine(), r.getLineContent()});
+        }
+        return new CompactResults(files, hits);
+    }
+
+    private void send(Object payload) {
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("sérialisation des résultats impossible", e);
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, headers.getMessageHeaders()));
+
+        long now = System.nanoTime();
+        if (frames == 0) firstSendNanos = now;
+        frames++;
+        bytes += json.length;
+        lastFlush = now;
+    }
+}
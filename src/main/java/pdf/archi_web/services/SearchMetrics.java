@@ -0,0 +1,69 @@
+package pdf.archi_web.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métriques du chemin de recherche (Micrometer, exportées sur /actuator/prometheus).
+ * Toutes sont des histogrammes : les percentiles (p50/p95/p99, SLO) se calculent dans Prometheus
+ * avec histogram_quantile, ce qui reste juste en agrégeant plusieurs instances.
+ */
+@Component
+public class SearchMetrics {
+
+    private final Timer parse;
+    private final Timer lucene;
+    private final Timer firstResult;
+    private final DistributionSummary hits;
+    private final DistributionSummary frames;
+    private final DistributionSummary bytes;
+
+    public SearchMetrics(MeterRegistry registry) {
+        this.parse = timer(registry, "search.parse", "Analyse de la requête (QueryParser)");
+        this.lucene = timer(registry, "search.lucene", "Temps passé dans Lucene (search/searchAfter) par demande");
+        this.firstResult = timer(registry, "search.first.result", "Temps entre la demande et l'envoi du premier résultat");
+        this.hits = summary(registry, "search.hits", "results", "Résultats envoyés par recherche");
+        this.frames = summary(registry, "search.ws.frames", "frames", "Trames WebSocket de résultats par recherche");
+        this.bytes = summary(registry, "search.ws.bytes", "bytes", "Octets de résultats envoyés par recherche");
+    }
+
+    static Timer timer(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    static DistributionSummary summary(MeterRegistry registry, String name, String unit, String description) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(unit)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void parse(long nanos) {
+        parse.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void lucene(long nanos) {
+        lucene.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void firstResult(long nanos) {
+        firstResult.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Bilan d'une recherche terminée ou abandonnée.
+     */
+    public void searchDone(int hitCount, int frameCount, long byteCount) {
+        hits.record(hitCount);
+        frames.record(frameCount);
+        bytes.record(byteCount);
+    }
+}
@@ -1,80 +1,182 @@
 package pdf.archi_web.services;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
+import jakarta.annotation.PreDestroy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.queryparser.classic.QueryParser;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import pdf.archi_web.DTO.SearchResult;
-import org.apache.lucene.store.*;
 import pdf.archi_web.PdfSearcher;
+import pdf.archi_web.SearchCache;
+import pdf.archi_web.SearchCursor;
+import pdf.archi_web.SearcherLifetime;
 
-import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
 
 
+/**
+ * Point d'accès unique à l'index en lecture : un seul gestionnaire de searchers pour toute l'application,
+ * branché en NRT sur les writers d'{@link IndexingService} au lieu d'ouvrir un reader par requête.
+ */
 @Service
 public class SearchProvider {
 
-    private final StandardAnalyzer analyzer;
-    private final Directory indexDirectory;
+    private final IndexingService indexingService;
+    private final ReferenceManager<IndexSearcher> searcherManager;
+    private final PdfSearcher pdfSearcher;
+    private final SearchCache cache;
+    private final SearchMetrics metrics;
+    // Readers retenus pour les curseurs paginés, retrouvés par leur version
+    private final SearcherLifetime lifetime = new SearcherLifetime();
+    private final int docsPerFetch;
+    private final int maxCachedResults;
+    private final double maxAgeSeconds;
 
-    public SearchProvider() throws IOException {
-        this.indexDirectory = FSDirectory.open(new File("index").toPath());
-        this.analyzer = new StandardAnalyzer();
+    public SearchProvider(IndexingService indexingService, SearchCache cache, SearchMetrics metrics,
+                          @Value("${search.cursor.docs-per-fetch:32}") int docsPerFetch,
+                          @Value("${search.cache.max-results:1000}") int maxCachedResults,
+                          @Value("${search.cursor.max-age-seconds:600}") double maxAgeSeconds) {
+        this.indexingService = indexingService;
+        this.docsPerFetch = docsPerFetch;
+        this.maxCachedResults = maxCachedResults;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.searcherManager = indexingService.getSearcherManager();
+        this.pdfSearcher = new PdfSearcher(searcherManager, indexingService.getAnalyzer(), indexingService.getPageTextStore());
+        this.cache = cache;
+        this.metrics = metrics;
+
+        // nouvelle version de l'index : les entrées en cache ne seront plus jamais lues, on libère la place
+        searcherManager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) cache.invalidateAll();
+            }
+        });
     }
 
     /**
-     * Recherche dans l'index et renvoie chaque résultat via un callback.
+     * Recherche dans l'index et renvoie tous les résultats via un callback (sans pagination).
      */
     public void search(String query, PdfSearcher.SearchResultCallback callback) throws IOException, ParseException {
-        try (IndexReader reader = DirectoryReader.open(indexDirectory)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
-            QueryParser parser = new QueryParser("content", analyzer);
-            Query q = parser.parse(query);
-
-            TopDocs docs = searcher.search(q, 100); // max 100 documents
-
-            for (ScoreDoc sd : docs.scoreDocs) {
-                Document d = searcher.doc(sd.doc);
-                String filename = d.get("filename");
-                int page = Integer.parseInt(d.get("page"));
-                String content = d.get("content");
-
-                // On découpe par paragraphe
-                String[] paragraphs = content.split("\\n\\n");
-                for (int p = 0; p < paragraphs.length; p++) {
-                    String paragraph = paragraphs[p];
-                    if (paragraph.toLowerCase().contains(query.toLowerCase())) {
-                        // Découpe le paragraphe en lignes pour trouver la bonne
-                        String[] lines = paragraph.split("\\n");
-                        for (int l = 0; l < lines.length; l++) {
-                            if (lines[l].toLowerCase().contains(query.toLowerCase())) {
-                                SearchResult result = new SearchResult(
-                                        filename,
-                                        page,
-                                        p + 1,   // numéro du paragraphe
-                                        l + 1,   // numéro de la ligne
-                                        lines[l] // contenu de la ligne
-                                );
-
-                                // Envoi du résultat au callback
-                                callback.onResult(result);
-                            }
-                        }
-                    }
-                }
+        next(open(query), Integer.MAX_VALUE, callback);
+    }
+
+    /**
+     * Ouvre une recherche paginée, figée sur la version courante de l'index : les pages suivantes
+     * seront lues sur le même reader tant qu'il n'est pas élagué (voir {@code search.cursor.max-age-seconds}).
+     */
+    public PagedSearch open(String query) throws IOException, ParseException {
+        long parseStart = System.nanoTime();
+        Query q = pdfSearcher.parse(query);
+        metrics.parse(System.nanoTime() - parseStart);
+
+        long version;
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            version = lifetime.record(searcher);
+        } finally {
+            searcherManager.release(searcher);
+        }
+        // Les readers trop anciens (l'index a changé depuis) ne sont plus retenus pour les curseurs
+        lifetime.prune(maxAgeSeconds);
+
+        SearchCache.Key key = new SearchCache.Key(q.toString(), version);
+        SearchCursor.Snapshot cached = cache.get(key);
+        SearchCursor cursor = cached != null
+                ? new SearchCursor(pdfSearcher, q, docsPerFetch, cached)
+                : new SearchCursor(pdfSearcher, q, docsPerFetch);
+        return new PagedSearch(key, cursor, cached != null);
+    }
+
+    /**
+     * Émet au plus {@code n} résultats supplémentaires. Le premier lot d'une requête est mis en cache
+     * (avec la position du curseur) quand il reste borné par {@code search.cache.max-results}.
+     *
+     * @return le nombre de résultats émis
+     */
+    public int next(PagedSearch search, int n, PdfSearcher.SearchResultCallback callback) throws IOException {
+        IndexSearcher searcher = lifetime.acquire(search.key.readerVersion());
+        boolean pinned = searcher != null;
+        if (!pinned) {
+            // Version élaguée : on poursuit au mieux sur l'index courant
+            searcher = searcherManager.acquire();
+            search.cursor.rebase();
+        }
+        try {
+            SearchCursor cursor = search.cursor;
+            if (!search.fromCache && cursor.emitted() == 0 && n <= maxCachedResults) {
+                cursor.recordSnapshot();
             }
-        } catch (org.apache.lucene.queryparser.classic.ParseException e) {
-            throw new RuntimeException(e);
+            long lucene = cursor.luceneNanos();
+            int sent;
+            try {
+                sent = cursor.next(searcher, n, callback);
+            } finally {
+                if (cursor.luceneNanos() > lucene) metrics.lucene(cursor.luceneNanos() - lucene);
+            }
+            SearchCursor.Snapshot snapshot = cursor.snapshot();
+            if (snapshot != null && pinned) cache.put(search.key, snapshot);
+            return sent;
+        } finally {
+            if (pinned) lifetime.release(searcher);
+            else searcherManager.release(searcher);
         }
     }
+
+    /**
+     * Recherche paginée en cours : requête canonique + version figée de l'index, et son curseur.
+     * Non thread-safe, comme {@link SearchCursor}.
+     */
+    public static final class PagedSearch {
+        private final SearchCache.Key key;
+        private final SearchCursor cursor;
+        private final boolean fromCache;
+
+        private PagedSearch(SearchCache.Key key, SearchCursor cursor, boolean fromCache) {
+            this.key = key;
+            this.cursor = cursor;
+            this.fromCache = fromCache;
+        }
+
+        public boolean hasMore() {
+            return cursor.hasMore();
+        }
+
+        /** Interrompt la recherche depuis un autre thread (voir {@link SearchCursor#cancel()}). */
+        public void cancel() {
+            cursor.cancel();
+        }
+
+        public int emitted() {
+            return cursor.emitted();
+        }
+    }
+
+    /**
+     * Emprunte le searcher courant ; doit toujours être rendu via {@link #release(IndexSearcher)}.
+     */
+    public IndexSearcher acquire() throws IOException {
+        return searcherManager.acquire();
+    }
+
+    public void release(IndexSearcher searcher) throws IOException {
+        searcherManager.release(searcher);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lifetime.close();
+    }
+
+    /**
+     * Rend visibles les documents ajoutés depuis le dernier refresh (commités ou non).
+     */
+    public void refresh() throws IOException {
+        indexingService.refresh();
+    }
 }
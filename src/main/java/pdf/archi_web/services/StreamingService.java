@@ -1,48 +1,309 @@
 package pdf.archi_web.services;
 
-import lombok.RequiredArgsConstructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.flyway.FlywayProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
-import pdf.archi_web.PdfSearcher;
-import pdf.archi_web.DTO.SearchResult;
 
+/**
+ * Diffusion des résultats par WebSocket, à la demande du client : chaque demande émet au plus N résultats,
+ * puis "HAS_MORE" s'il en reste (le client redemande via /app/moreResults) ou "COMPLETED" sinon.
+ * <p>
+ * Une recherche en cours par session, qui reprend là où son curseur s'était arrêté : ni plafond
+ * sur le nombre de résultats, ni accumulation côté serveur. Les résultats sont regroupés en trames
+ * selon le format demandé par le client (voir {@link ResultBatcher}).
+ * <p>
+ * Les recherches tournent sur des threads virtuels, pas sur le canal entrant STOMP. Une nouvelle requête
+ * d'une session annule la précédente, une déconnexion annule celles de la connexion, et au plus
+ * {@code search.max-concurrent} recherches s'exécutent en même temps.
+ */
 @Service
-@RequiredArgsConstructor
 public class StreamingService {
 
+    public static final String HAS_MORE = "HAS_MORE";
+    public static final String COMPLETED = "COMPLETED";
+
     private final SimpMessagingTemplate messagingTemplate;
     private final AuditLogService audit;
+    private final SearchProvider searchProvider;
+    private final SearchMetrics metrics;
+    private final ObjectMapper mapper;
+    private final int pageSize;
+    private final int maxPageSize;
+    private final long idleMillis;
+    private final ResultBatcher.Format defaultFormat;
+    private final int batchSize;
+    private final long flushMillis;
+    private final Semaphore slots;
+    private final long slotWaitMillis;
+
+    // Recherche en cours par session (identifiant fourni par le client)
+    private final Map<String, ActiveSearch> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("search-", 0).factory());
+    // Échéances search.stream.flush-ms des lots en attente, pendant que la recherche lit l'index
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public StreamingService(SimpMessagingTemplate messagingTemplate, AuditLogService audit, SearchProvider searchProvider,
+                            SearchMetrics metrics, ObjectMapper mapper,
+                            @Value("${search.page.size:100}") int pageSize,
+                            @Value("${search.page.max-size:1000}") int maxPageSize,
+                            @Value("${search.cursor.idle-minutes:10}") long idleMinutes,
+                            @Value("${search.stream.default-format:single}") String defaultFormat,
+                            @Value("${search.stream.batch-size:64}") int batchSize,
+                            @Value("${search.stream.flush-ms:50}") long flushMillis,
+                            @Value("${search.max-concurrent:16}") int maxConcurrent,
+                            @Value("${search.slot-wait-ms:2000}") long slotWaitMillis) {
+        this.messagingTemplate = messagingTemplate;
+        this.audit = audit;
+        this.searchProvider = searchProvider;
+        this.metrics = metrics;
+        this.mapper = mapper;
+        this.pageSize = pageSize;
+        this.maxPageSize = maxPageSize;
+        this.idleMillis = idleMinutes * 60_000L;
+        this.defaultFormat = ResultBatcher.Format.parse(defaultFormat, ResultBatcher.Format.SINGLE);
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.slots = new Semaphore(maxConcurrent);
+        this.slotWaitMillis = slotWaitMillis;
+    }
 
     public void streamResultsForUser(String sessionId, String query) {
         streamResultsForUser(sessionId, query, "Maxime");
     }
 
     public void streamResultsForUser(String sessionId, String query, String user) {
-        List<SearchResult> all = new ArrayList<>();
+        streamResultsForUser(null, sessionId, query, user, 0, null);
+    }
+
+    /**
+     * Démarre une nouvelle recherche pour la session (la précédente est annulée) et envoie le premier lot.
+     * Rend la main tout de suite : la recherche s'exécute sur un thread virtuel.
+     *
+     * @param connectionId session STOMP qui porte la demande (annulation à la déconnexion), null si aucune
+     * @param limit        nombre de résultats demandés (0 : taille de page par défaut)
+     * @param format       encodage des trames (single, batch, compact ; null : search.stream.default-format)
+     */
+    public void streamResultsForUser(String connectionId, String sessionId, String query, String user, int limit, String format) {
+        ActiveSearch active = new ActiveSearch(connectionId, query, user, ResultBatcher.Format.parse(format, defaultFormat));
+        ActiveSearch previous = sessions.put(sessionId, active);
+        if (previous != null) abandon(previous);
+        evictIdle();
+
+        executor.execute(() -> run(sessionId, active, () -> {
+            // La recherche annulée rend la main au plus tard à son prochain résultat :
+            // une fois son verrou libéré, plus aucune de ses trames ne part
+            if (previous != null) {
+                previous.lock.lock();
+                previous.lock.unlock();
+            }
+            SearchProvider.PagedSearch search;
+            try {
+                search = searchProvider.open(query);
+            } catch (Exception e) {
+                sessions.remove(sessionId, active);
+                if (active.finish()) {
+                    audit.logSearchError(user, query, e.getMessage());
+                    messagingTemplate.convertAndSend("/queue/results-" + sessionId, "ERROR: " + e.getMessage());
+                }
+                return;
+            }
+            active.search = search;
+            if (active.cancelled) search.cancel();
+            deliver(sessionId, active, limit);
+        }));
+    }
+
+    /**
+     * Poursuit la recherche en cours de la session avec {@code limit} résultats de plus.
+     */
+    public void moreResults(String sessionId, int limit) {
+        ActiveSearch active = sessions.get(sessionId);
+        if (active == null || active.search == null) {
+            messagingTemplate.convertAndSend("/queue/results-" + sessionId, "ERROR: aucune recherche en cours");
+            return;
+        }
+        executor.execute(() -> run(sessionId, active, () -> deliver(sessionId, active, limit)));
+    }
+
+    /**
+     * La connexion STOMP est fermée : ses recherches en cours s'arrêtent.
+     */
+    public void cancelConnection(String connectionId) {
+        if (connectionId == null) return;
+        sessions.entrySet().removeIf(e -> {
+            if (!connectionId.equals(e.getValue().connectionId)) return false;
+            abandon(e.getValue());
+            return true;
+        });
+    }
+
+    /**
+     * Exécute une étape de recherche dans la limite globale de recherches simultanées.
+     */
+    private void run(String sessionId, ActiveSearch active, Runnable step) {
+        boolean acquired = false;
         try {
-            PdfSearcher searcher = new PdfSearcher("index");
-            searcher.search(query, result -> {
-                // push WS
-                messagingTemplate.convertAndSend("/queue/results-" + sessionId, result);
-                // garde pour le log final
-                all.add(result);
-            });
-
-            // (optionnel) notifier la fin :
-            messagingTemplate.convertAndSend("/queue/results-" + sessionId, "COMPLETED");
-
-            // log complet
-            audit.logSearchOk(user, query, all);
-
-        } catch (Exception e) {
-            audit.logSearchError(user, query, e.getMessage());
-            messagingTemplate.convertAndSend("/queue/results-" + sessionId, "ERROR: " + e.getMessage());
+            acquired = slots.tryAcquire(slotWaitMillis, TimeUnit.MILLISECONDS);
+            if (active.cancelled) return;
+            if (!acquired) {
+                sessions.remove(sessionId, active);
+                if (active.finish()) {
+                    audit.logSearchError(active.user, active.query, "trop de recherches simultanées");
+                    messagingTemplate.convertAndSend("/queue/results-" + sessionId, "ERROR: serveur occupé, réessayez dans un instant");
+                }
+                return;
+            }
+            step.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (acquired) slots.release();
+        }
+    }
+
+    private void deliver(String sessionId, ActiveSearch active, int limit) {
+        String destination = "/queue/results-" + sessionId;
+        int n = limit <= 0 ? pageSize : Math.min(limit, maxPageSize);
+
+        // Deux demandes concurrentes de la même session ne doivent pas entrelacer le curseur.
+        // ReentrantLock et non synchronized : un thread virtuel qui attend ou cherche sous un moniteur
+        // bloque son thread porteur
+        active.lock.lock();
+        try {
+            if (active.cancelled) return;
+            active.lastAccess = System.currentTimeMillis();
+            try {
+                ResultBatcher batcher = new ResultBatcher(messagingTemplate, mapper, destination, active.format,
+                        batchSize, flushMillis, active.fileIds, flushTimer);
+                try {
+                    searchProvider.next(active.search, n, batcher);
+                    batcher.flush();
+                } finally {
+                    // aucune trame du timer après HAS_MORE/COMPLETED ou une annulation
+                    batcher.close();
+                    active.count(batcher, metrics);
+                }
+
+                if (active.firstBatchMs == null) {
+                    active.firstBatchMs = (System.nanoTime() - active.startedAt) / 1_000_000;
+                }
+                if (active.search.hasMore()) {
+                    messagingTemplate.convertAndSend(destination, HAS_MORE);
+                } else {
+                    sessions.remove(sessionId, active);
+                    // dernière page terminée pendant qu'abandon() l'annulait : une seule des deux fins compte
+                    if (active.finish()) {
+                        messagingTemplate.convertAndSend(destination, COMPLETED);
+                        audit.logSearchOk(active.user, active.query, active.search.emitted(), active.firstBatchMs);
+                        metrics.searchDone(active.search.emitted(), active.frames, active.bytes);
+                    }
+                }
+            } catch (CancellationException e) {
+                // remplacée par une nouvelle requête ou connexion fermée : déjà journalisée par abandon()
+            } catch (Exception e) {
+                sessions.remove(sessionId, active);
+                if (active.finish()) {
+                    audit.logSearchError(active.user, active.query, e.getMessage());
+                    metrics.searchDone(active.search.emitted(), active.frames, active.bytes);
+                    messagingTemplate.convertAndSend(destination, "ERROR: " + e.getMessage());
+                }
+            }
+        } finally {
+            active.lock.unlock();
+        }
+    }
+
+    /**
+     * Recherche jamais menée à son terme : on l'arrête et on journalise comme annulée ce qui a été effectivement envoyé.
+     * Sans effet sur une recherche terminée entre-temps (déjà journalisée par deliver()).
+     */
+    private void abandon(ActiveSearch active) {
+        active.cancel();
+        if (!active.finish()) return;
+        SearchProvider.PagedSearch search = active.search;
+        audit.logSearchCancelled(active.user, active.query, search == null ? 0 : search.emitted(), active.firstBatchMs);
+        metrics.searchDone(search == null ? 0 : search.emitted(), active.frames, active.bytes);
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        sessions.entrySet().removeIf(e -> {
+            if (now - e.getValue().lastAccess < idleMillis) return false;
+            abandon(e.getValue());
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        sessions.values().forEach(ActiveSearch::cancel);
+        executor.shutdownNow();
+        flushTimer.shutdownNow();
+    }
+
+    private static final class ActiveSearch {
+        final String connectionId;
+        final String query;
+        final String user;
+        final ResultBatcher.Format format;
+        // Fichiers déjà décrits au client (format compact), d'une demande à l'autre
+        final Map<String, Integer> fileIds = new HashMap<>();
+        // Une demande à la fois sur le curseur ; une recherche qui remplace celle-ci attend qu'il soit libéré
+        final ReentrantLock lock = new ReentrantLock();
+        // Ouverte sur le thread de recherche ; annulation et ouverture se croisent via ces deux volatiles
+        volatile SearchProvider.PagedSearch search;
+        volatile boolean cancelled;
+        // Journalisée et comptée une seule fois : terminée (deliver) ou abandonnée, selon qui arrive en premier
+        private final AtomicBoolean finished = new AtomicBoolean();
+        volatile long lastAccess = System.currentTimeMillis();
+        final long startedAt = System.nanoTime();
+        // Durée du premier lot (demande -> HAS_MORE/COMPLETED), pour l'historique
+        volatile Long firstBatchMs;
+        // Trames et octets envoyés sur toutes les demandes (métriques de fin de recherche)
+        volatile int frames;
+        volatile long bytes;
+
+        ActiveSearch(String connectionId, String query, String user, ResultBatcher.Format format) {
+            this.connectionId = connectionId;
+            this.query = query;
+            this.user = user;
+            this.format = format;
+        }
+
+        /** Cumule une demande ; le premier résultat de la recherche donne la mesure search.first.result. */
+        void count(ResultBatcher batcher, SearchMetrics metrics) {
+            if (frames == 0 && batcher.frames() > 0) metrics.firstResult(batcher.firstSendNanos() - startedAt);
+            frames += batcher.frames();
+            bytes += batcher.bytes();
+        }
+
+        /** Vrai pour le seul appelant qui clôt la recherche : lui seul la journalise et la compte. */
+        boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+
+        void cancel() {
+            cancelled = true;
+            SearchProvider.PagedSearch s = search;
+            if (s != null) s.cancel();
         }
     }
 }
@@ -0,0 +1,64 @@
+package pdf.archi_web.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import pdf.archi_web.DTO.Suggestions;
+import pdf.archi_web.Suggester;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestions pendant la saisie, par REST ou WebSocket : une consultation du {@link Suggester} (quelques
+ * millisecondes au plus), sans recherche Lucene complète ni extraction de lignes ; la recherche
+ * proprement dite ne part qu'une fois la requête validée (/app/startSearch).
+ */
+@Service
+public class SuggestService {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Suggester suggester;
+    private final Timer lookupTimer;
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    public SuggestService(SimpMessagingTemplate messagingTemplate, IndexingService indexingService, MeterRegistry registry,
+                          @Value("${suggest.limit:8}") int defaultLimit,
+                          @Value("${suggest.max-limit:50}") int maxLimit) {
+        this.messagingTemplate = messagingTemplate;
+        this.suggester = indexingService.getSuggester();
+        this.lookupTimer = SearchMetrics.timer(registry, "suggest.lookup", "Consultation des suggestions de saisie");
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param limit nombre de suggestions voulues (0 : suggest.limit)
+     */
+    public Suggestions suggest(String query, int limit) throws IOException {
+        int n = limit <= 0 ? defaultLimit : Math.min(limit, maxLimit);
+        long start = System.nanoTime();
+        try {
+            List<Suggester.Suggestion> suggestions = suggester.lookup(query, n);
+            return new Suggestions(query, suggestions);
+        } finally {
+            lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Envoie les suggestions sur /queue/suggest-{sessionId} ; une erreur est renvoyée comme en recherche ("ERROR: ...").
+     */
+    public void sendSuggestions(String sessionId, String query, int limit) {
+        String destination = "/queue/suggest-" + sessionId;
+        try {
+            messagingTemplate.convertAndSend(destination, suggest(query, limit));
+        } catch (Exception e) {
+            messagingTemplate.convertAndSend(destination, "ERROR: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package pdf.archi_web;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexReplicaTest {
+
+	@TempDir
+	Path dir;
+
+	private final List<AutoCloseable> open = new ArrayList<>();
+
+	@AfterEach
+	void close() throws Exception {
+		for (int i = open.size() - 1; i >= 0; i--) open.get(i).close();
+	}
+
+	/** Primaire en mémoire du processus : un shard, un fichier de texte des pages, son publieur. */
+	private final class Primary implements IndexReplica.Source {
+		final Path textFile;
+		final Directory directory;
+		final IndexWriter writer;
+		final IndexPublisher publisher;
+		final List<String> requested = new ArrayList<>();
+		int docs;
+
+		Primary(String name, String id) throws IOException {
+			Path root = dir.resolve(name);
+			Path textDir = Files.createDirectories(root.resolve("pagetext"));
+			textFile = textDir.resolve(PageTextStore.fileName(0));
+			Files.createFile(textFile);
+			directory = FSDirectory.open(root.resolve("shard-0"));
+			SnapshotDeletionPolicy snapshots = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+			writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()).setIndexDeletionPolicy(snapshots));
+			writer.setLiveCommitData(Map.of(IndexRevision.ID_KEY, id, PageTextStore.COMMIT_KEY, "0").entrySet());
+			publisher = new IndexPublisher(textDir, id);
+			publisher.add(IndexShards.name(0), directory, IndexPublisher.Snapshots.of(snapshots));
+			open.add(directory);
+			open.add(writer);
+			open.add(publisher::close);
+		}
+
+		/** Un commit de plus (nouveaux segments et texte ajouté), publié. */
+		IndexRevision commit(int newDocs) throws IOException {
+			for (int i = 0; i < newDocs; i++, docs++) {
+				Document d = new Document();
+				d.add(new StringField("filename", "doc-" + docs + ".pdf", Field.Store.YES));
+				d.add(new TextField("content", "page " + docs + " guerre nadal climat", Field.Store.NO));
+				writer.addDocument(d);
+			}
+			Files.write(textFile, ("texte des pages " + docs + "\n").repeat(50).getBytes(), StandardOpenOption.APPEND);
+			writer.commit();
+			return publisher.publish();
+		}
+
+		@Override
+		public InputStream file(String index, String name) throws IOException {
+			requested.add(name);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			if (!publisher.copyFile(index, name, out)) throw new IOException("404 " + name);
+			return new ByteArrayInputStream(out.toByteArray());
+		}
+
+		@Override
+		public InputStream text(String file, long from) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			if (!publisher.copyText(file, from, out)) throw new IOException("404 " + file);
+			return new ByteArrayInputStream(out.toByteArray());
+		}
+	}
+
+	private final class Replica {
+		final Path textDir;
+		final Directory directory;
+		final IndexReplica replica;
+
+		Replica() throws IOException {
+			Path root = dir.resolve("replica");
+			textDir = root.resolve("pagetext");
+			directory = FSDirectory.open(root.resolve("shard-0"));
+			PageTextStore store = PageTextStore.readOnly(textDir);
+			Map<String, Directory> indexes = new LinkedHashMap<>();
+			indexes.put(IndexShards.name(0), directory);
+			replica = new IndexReplica(indexes, textDir, store);
+			open.add(directory);
+			open.add(store);
+		}
+
+		int docs() throws IOException {
+			try (DirectoryReader reader = DirectoryReader.open(directory)) {
+				return reader.numDocs();
+			}
+		}
+
+		Set<String> files() throws IOException {
+			return new HashSet<>(Arrays.asList(directory.listAll()));
+		}
+	}
+
+	@Test
+	void copiesOnlyNewFilesAndPrunesOldOnes() throws IOException {
+		Primary primary = new Primary("primary", "index-a");
+		Replica replica = new Replica();
+
+		IndexRevision first = primary.commit(20);
+		assertTrue(replica.replica.update(first, primary));
+		assertEquals(20, replica.docs());
+		assertEquals(first.indexes().get(0).files().keySet(), replica.files());
+		assertArrayEquals(Files.readAllBytes(primary.textFile), Files.readAllBytes(replica.textDir.resolve(first.textFile())));
+
+		// révision suivante : seuls les fichiers du nouveau segment et le nouveau segments_N sont demandés
+		primary.requested.clear();
+		IndexRevision second = primary.commit(5);
+		assertTrue(replica.replica.update(second, primary));
+		Set<String> added = new HashSet<>(second.indexes().get(0).files().keySet());
+		added.removeAll(first.indexes().get(0).files().keySet());
+		assertEquals(added, new HashSet<>(primary.requested));
+		assertEquals(25, replica.docs());
+		assertArrayEquals(Files.readAllBytes(primary.textFile), Files.readAllBytes(replica.textDir.resolve(second.textFile())));
+		assertFalse(replica.replica.update(second, primary), "révision déjà appliquée");
+
+		// fusion sur le primaire : les fichiers des segments fusionnés disparaissent de la réplique après prune()
+		primary.writer.forceMerge(1);
+		IndexRevision merged = primary.commit(0);
+		IndexRevision fourth = primary.commit(1);
+		assertTrue(replica.replica.update(merged, primary));
+		assertTrue(replica.replica.update(fourth, primary));
+		replica.replica.prune();
+		Set<String> kept = new HashSet<>(merged.indexes().get(0).files().keySet());
+		kept.addAll(fourth.indexes().get(0).files().keySet());
+		assertEquals(kept, replica.files());
+		assertEquals(26, replica.docs());
+
+		// redémarrage de la réplique : rien à recopier
+		primary.requested.clear();
+		PageTextStore store = PageTextStore.readOnly(replica.textDir);
+		open.add(store);
+		IndexReplica restarted = new IndexReplica(Map.of(IndexShards.name(0), replica.directory), replica.textDir, store);
+		assertTrue(restarted.update(fourth, primary));
+		assertEquals(List.of(), primary.requested);
+	}
+
+	@Test
+	void resumesAnInterruptedCopy() throws IOException {
+		Primary primary = new Primary("primary", "index-a");
+		Replica replica = new Replica();
+		IndexRevision revision = primary.commit(30);
+		List<String> files = new ArrayList<>(revision.indexes().get(0).files().keySet());
+		assertTrue(files.size() > 3);
+
+		// coupure au milieu du troisième fichier
+		IndexReplica.Source flaky = new IndexReplica.Source() {
+			int calls;
+
+			@Override
+			public InputStream file(String index, String name) throws IOException {
+				InputStream in = primary.file(index, name);
+				if (++calls < 3) return in;
+				return new FilterInputStream(in) {
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						throw new IOException("connexion coupée");
+					}
+				};
+			}
+
+			@Override
+			public InputStream text(String file, long from) throws IOException {
+				return primary.text(file, from);
+			}
+		};
+		assertThrows(IOException.class, () -> replica.replica.update(revision, flaky));
+		assertNull(replica.replica.applied());
+		assertFalse(DirectoryReader.indexExists(replica.directory), "aucun commit visible avant la fin de la copie");
+		Set<String> kept = replica.files();
+		assertEquals(2, kept.size(), "les deux fichiers complets restent, le fichier coupé est supprimé : " + kept);
+
+		primary.requested.clear();
+		assertTrue(replica.replica.update(revision, primary));
+		assertEquals(files.size() - 2, primary.requested.size());
+		for (String name : kept) assertFalse(primary.requested.contains(name), name + " recopié");
+		assertEquals(30, replica.docs());
+		assertFalse(replica.files().stream().anyMatch(f -> f.startsWith("pending_")));
+	}
+
+	@Test
+	void recopiesEverythingWhenThePrimaryIndexChanges() throws IOException {
+		Primary before = new Primary("primary", "index-a");
+		Replica replica = new Replica();
+		IndexRevision old = before.commit(20);
+		assertTrue(replica.replica.update(old, before));
+
+		// index du primaire recréé : mêmes noms de fichiers (_0.cfs, segments_1...), autres contenus
+		Primary recreated = new Primary("recreated", "index-b");
+		IndexRevision fresh = recreated.commit(7);
+		assertEquals(old.indexes().get(0).segments(), fresh.indexes().get(0).segments());
+		assertTrue(replica.replica.update(fresh, recreated));
+
+		assertEquals(fresh.indexes().get(0).files().keySet(), new HashSet<>(recreated.requested));
+		assertEquals(fresh.indexes().get(0).files().keySet(), replica.files());
+		assertEquals(7, replica.docs());
+		assertArrayEquals(Files.readAllBytes(recreated.textFile), Files.readAllBytes(replica.textDir.resolve(fresh.textFile())));
+	}
+}
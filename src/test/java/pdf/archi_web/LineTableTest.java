@@ -0,0 +1,29 @@
+package pdf.archi_web;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LineTableTest {
+
+	@Test
+	void sameNumberingAsSplitOnBlankLines() {
+		String text = "Titre\nsous-titre\n\nPremier paragraphe\nsuite\n\n\nligne après trois sauts\n";
+		LineTable table = LineTable.decode(new BytesRef(LineTable.build(text).encode()));
+
+		// numérotation de référence : l'ancien split("\\n\\n") puis split("\\n")
+		String[] paragraphs = text.split("\\n\\n");
+		for (int p = 0; p < paragraphs.length; p++) {
+			String[] lines = paragraphs[p].split("\\n");
+			for (int l = 0; l < lines.length; l++) {
+				if (lines[l].isEmpty()) continue;
+				int i = table.lineAt(text.indexOf(lines[l]));
+				assertEquals(p + 1, table.paragraph(i), lines[l]);
+				assertEquals(l + 1, table.line(i), lines[l]);
+				assertEquals(lines[l], text.substring(table.start(i), table.end(i)));
+			}
+		}
+	}
+
+}
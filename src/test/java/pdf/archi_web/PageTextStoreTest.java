@@ -0,0 +1,174 @@
+package pdf.archi_web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageTextStoreTest {
+
+	// régions de 16 Ko : chaque bloc (quelques Ko compressés) finit par buter sur une frontière
+	private static final int REGION_BITS = 14;
+
+	@TempDir
+	Path dir;
+
+	private final Random random = new Random(42);
+
+	@Test
+	void roundTripAcrossRegionsGenerationsAndReopen() throws IOException {
+		Map<Long, String> gen0 = new LinkedHashMap<>();
+		Map<Long, String> gen1 = new LinkedHashMap<>();
+
+		PageTextStore store = new PageTextStore(dir, 0, REGION_BITS);
+		for (int b = 0; b < 40; b++) {
+			append(store, gen0, 1 + b % 4);
+			// lecture pendant que le fichier grandit : régions remappées au besoin
+			assertReadable(store, gen0);
+		}
+		Set<Long> regions = new HashSet<>();
+		for (long pointer : gen0.keySet()) {
+			assertEquals(0, pointer >>> 48);
+			regions.add(((pointer >>> 8) & ((1L << 40) - 1)) >>> REGION_BITS);
+		}
+		assertTrue(regions.size() >= 5, "régions utilisées : " + regions.size());
+
+		// réindexation complète : nouvelle génération, l'ancienne reste lisible jusqu'à dropRetired()
+		store.reset();
+		assertEquals(1, store.generation());
+		for (int b = 0; b < 10; b++) append(store, gen1, 3);
+		assertReadable(store, gen0);
+		assertReadable(store, gen1);
+		store.sync();
+		store.dropRetired();
+		assertFalse(Files.exists(dir.resolve(PageTextStore.fileName(0))));
+		assertTrue(Files.exists(dir.resolve(PageTextStore.fileName(1))));
+		// fichier supprimé mais encore ouvert et mappé : les readers en cours le lisent toujours
+		assertReadable(store, gen0);
+		store.close();
+
+		// redémarrage sur la génération du dernier commit : les autres fichiers sont obsolètes
+		Files.write(dir.resolve(PageTextStore.fileName(7)), new byte[]{1, 2, 3});
+		store = new PageTextStore(dir, 1, REGION_BITS);
+		assertFalse(Files.exists(dir.resolve(PageTextStore.fileName(7))));
+		assertReadable(store, gen1);
+		for (int b = 0; b < 10; b++) append(store, gen1, 2); // ajout à la suite du fichier existant
+		assertReadable(store, gen1);
+		store.sync();
+
+		// lecteur d'un autre processus, régions par défaut : les blocs ne chevauchent pas ses frontières non plus
+		try (PageTextStore reader = PageTextStore.readOnly(dir)) {
+			assertReadable(reader, gen1);
+			long stale = gen0.keySet().iterator().next();
+			assertThrows(IOException.class, () -> reader.read(stale));
+		}
+		store.close();
+	}
+
+	@Test
+	void retiredGenerationIsClosedOneCommitAfterItsFileIsDeleted() throws IOException {
+		Map<Long, String> gen0 = new LinkedHashMap<>();
+		Map<Long, String> gen1 = new LinkedHashMap<>();
+		try (PageTextStore store = new PageTextStore(dir, 0, REGION_BITS)) {
+			for (int b = 0; b < 5; b++) append(store, gen0, 3);
+			assertReadable(store, gen0);
+
+			// réindexation complète puis commit : fichier supprimé, encore ouvert pour les readers d'avant le commit
+			store.reset();
+			for (int b = 0; b < 5; b++) append(store, gen1, 3);
+			store.sync();
+			store.dropRetired();
+			assertFalse(Files.exists(dir.resolve(PageTextStore.fileName(0))));
+			assertTrue(store.isOpen(0));
+			assertReadable(store, gen0);
+			boolean procFd = Files.isDirectory(Path.of("/proc/self/fd"));
+			if (procFd) assertTrue(openFiles().contains(dir.resolve(PageTextStore.fileName(0)).toString()));
+
+			// commit suivant : plus aucun reader sur la génération 0, descripteur et régions rendus
+			store.sync();
+			store.dropRetired();
+			assertFalse(store.isOpen(0));
+			assertTrue(store.isOpen(1));
+			long stale = gen0.keySet().iterator().next();
+			assertThrows(IOException.class, () -> store.read(stale));
+			assertReadable(store, gen1);
+			if (procFd) {
+				assertFalse(openFiles().contains(dir.resolve(PageTextStore.fileName(0)).toString()), "descripteur encore ouvert");
+			}
+		}
+	}
+
+	@Test
+	void rejectsBlockLargerThanRegion() throws IOException {
+		try (PageTextStore store = new PageTextStore(dir, 0, REGION_BITS)) {
+			String page = words(4000); // peu compressible, bien plus de 16 Ko
+			assertThrows(IOException.class, () -> store.append(List.of(page), List.of(LineTable.build(page))));
+		}
+	}
+
+	private void append(PageTextStore store, Map<Long, String> written, int pages) throws IOException {
+		List<String> texts = new ArrayList<>();
+		List<LineTable> lines = new ArrayList<>();
+		for (int i = 0; i < pages; i++) {
+			String text = words(150 + random.nextInt(250));
+			texts.add(text);
+			lines.add(LineTable.build(text));
+		}
+		long[] pointers = store.append(texts, lines);
+		for (int i = 0; i < pointers.length; i++) {
+			assertEquals(i, pointers[i] & 0xFF);
+			written.put(pointers[i], texts.get(i));
+		}
+	}
+
+	private static void assertReadable(PageTextStore store, Map<Long, String> written) throws IOException {
+		for (Map.Entry<Long, String> e : written.entrySet()) {
+			PageTextStore.Page page = store.read(e.getKey());
+			assertEquals(e.getValue(), page.text());
+			LineTable expected = LineTable.build(e.getValue());
+			assertEquals(expected.size(), page.lines().size());
+			for (int l = 0; l < expected.size(); l++) {
+				assertEquals(expected.start(l), page.lines().start(l));
+				assertEquals(expected.paragraph(l), page.lines().paragraph(l));
+			}
+		}
+	}
+
+	/** Cibles des descripteurs ouverts par le processus (Linux ; fichier supprimé : suffixe " (deleted)"). */
+	private static Set<String> openFiles() throws IOException {
+		Set<String> targets = new HashSet<>();
+		try (DirectoryStream<Path> fds = Files.newDirectoryStream(Path.of("/proc/self/fd"))) {
+			for (Path fd : fds) {
+				try {
+					targets.add(Files.readSymbolicLink(fd).toString().replace(" (deleted)", ""));
+				} catch (IOException e) {
+					// descripteur fermé entre-temps (celui du listage lui-même)
+				}
+			}
+		}
+		return targets;
+	}
+
+	/** Texte peu compressible, avec lignes et paragraphes. */
+	private String words(int n) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			int length = 3 + random.nextInt(8);
+			for (int c = 0; c < length; c++) text.append((char) ('a' + random.nextInt(26)));
+			text.append(i % 40 == 39 ? "\n\n" : i % 9 == 8 ? "\n" : i % 17 == 0 ? " é " : " ");
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,206 @@
+package pdf.archi_web.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pdf.archi_web.DTO.UploadSessionStatus;
+import pdf.archi_web.services.IndexingService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTest {
+
+	private static final int CHUNK = 64 * 1024;
+
+	@TempDir
+	Path dir;
+
+	private UploadService uploads;
+	private UploadJobService jobs;
+	private ChunkedUploadService service;
+
+	// fichier confié à l'indexation par complete() : contenu et empreinte annoncée
+	private byte[] stored;
+	private String storedSha256;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		uploads = mock(UploadService.class);
+		jobs = mock(UploadJobService.class);
+		when(uploads.getStorageDir()).thenReturn(dir);
+		when(uploads.storeReserved(any(Path.class), anyString(), anyString(), anyString())).thenAnswer(call -> {
+			Path part = call.getArgument(0);
+			stored = Files.readAllBytes(part);
+			storedSha256 = call.getArgument(2);
+			Files.delete(part);
+			return new UploadService.UploadResult(call.getArgument(1), "/pdf/" + call.getArgument(1), part.toString(), "job", "QUEUED", false);
+		});
+		service = service(60);
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.close();
+	}
+
+	private ChunkedUploadService service(long idleMinutes) throws IOException {
+		return new ChunkedUploadService(uploads, jobs, mock(IndexingService.class), 8, 64, 2048, 32, idleMinutes);
+	}
+
+	@Test
+	void outOfOrderChunksGiveTheWholeFileDigest() throws Exception {
+		byte[] file = file(5 * CHUNK + 1234);
+		String id = start(service, file);
+
+		// 3 et 4 arrivent en avance : relus depuis le fichier quand 0..2 sont là
+		for (int i : new int[]{3, 1, 4, 0, 5, 2}) service.writeChunk(id, i, sha256(chunk(file, i)), body(chunk(file, i)));
+		assertEquals(List.of(), service.status(id).getMissing());
+
+		UploadService.UploadResult result = service.complete(id);
+		assertEquals("rapport.pdf", result.getFilename());
+		assertArrayEquals(file, stored);
+		assertEquals(sha256(file), storedSha256);
+		assertThrows(ChunkedUploadService.UnknownSessionException.class, () -> service.status(id));
+	}
+
+	@Test
+	void inOrderChunksAreHashedWhileWritten() throws Exception {
+		byte[] file = file(3 * CHUNK);
+		String id = start(service, file);
+		for (int i = 0; i < 3; i++) service.writeChunk(id, i, sha256(chunk(file, i)), body(chunk(file, i)));
+
+		service.complete(id);
+		assertArrayEquals(file, stored);
+		assertEquals(sha256(file), storedSha256);
+	}
+
+	@Test
+	void parallelChunks() throws Exception {
+		byte[] file = file(40 * CHUNK + 17);
+		String id = start(service, file);
+		List<Integer> order = new ArrayList<>(IntStream.range(0, 41).boxed().toList());
+		Collections.shuffle(order, new Random(7));
+
+		ExecutorService pool = Executors.newFixedThreadPool(6);
+		try {
+			List<Future<UploadSessionStatus>> sent = new ArrayList<>();
+			for (int i : order) {
+				sent.add(pool.submit(() -> service.writeChunk(id, i, sha256(chunk(file, i)), body(chunk(file, i)))));
+			}
+			for (Future<UploadSessionStatus> f : sent) f.get();
+		} finally {
+			pool.shutdown();
+		}
+
+		service.complete(id);
+		assertArrayEquals(file, stored);
+		assertEquals(sha256(file), storedSha256);
+	}
+
+	@Test
+	void badChunkLeavesOnlyThatChunkMissing() throws Exception {
+		byte[] file = file(4 * CHUNK + 100);
+		String id = start(service, file);
+		for (int i : new int[]{0, 2, 3, 4}) service.writeChunk(id, i, sha256(chunk(file, i)), body(chunk(file, i)));
+
+		byte[] good = chunk(file, 1);
+		byte[] corrupt = good.clone();
+		corrupt[100] ^= 1;
+		byte[] shorter = Arrays.copyOf(good, good.length - 1);
+		byte[] longer = Arrays.copyOf(good, good.length + 1);
+		for (byte[] bad : List.of(corrupt, shorter, longer)) {
+			assertThrows(IllegalArgumentException.class, () -> service.writeChunk(id, 1, sha256(good), body(bad)));
+			assertEquals(List.of(1), service.status(id).getMissing());
+		}
+		assertThrows(IllegalStateException.class, () -> service.complete(id));
+
+		// reprise : seul le morceau manquant est renvoyé
+		UploadSessionStatus status = service.writeChunk(id, 1, sha256(good), body(good));
+		assertEquals(List.of(), status.getMissing());
+		// renvoi d'un morceau déjà reçu (réponse perdue) : ignoré
+		assertEquals(5, service.writeChunk(id, 0, sha256(chunk(file, 0)), body(chunk(file, 0))).getReceived());
+
+		service.complete(id);
+		assertArrayEquals(file, stored);
+		assertEquals(sha256(file), storedSha256);
+	}
+
+	@Test
+	void abortDeletesThePartialFile() throws Exception {
+		byte[] file = file(2 * CHUNK);
+		String id = start(service, file);
+		service.writeChunk(id, 1, sha256(chunk(file, 1)), body(chunk(file, 1)));
+		assertEquals(1, partFiles().size());
+
+		service.abort(id);
+		assertEquals(List.of(), partFiles());
+		assertThrows(ChunkedUploadService.UnknownSessionException.class, () -> service.status(id));
+		assertThrows(ChunkedUploadService.UnknownSessionException.class,
+				() -> service.writeChunk(id, 0, sha256(chunk(file, 0)), body(chunk(file, 0))));
+	}
+
+	@Test
+	void idleSessionsExpire() throws Exception {
+		service.close();
+		service = service(0); // toute session est déjà inactive
+		byte[] file = file(2 * CHUNK);
+		String id = start(service, file);
+		service.writeChunk(id, 0, sha256(chunk(file, 0)), body(chunk(file, 0)));
+
+		service.purgeIdle();
+		assertEquals(List.of(), partFiles());
+		assertThrows(ChunkedUploadService.UnknownSessionException.class, () -> service.status(id));
+	}
+
+	private String start(ChunkedUploadService service, byte[] file) throws IOException {
+		UploadSessionStatus status = service.start("rapport.pdf", file.length, CHUNK, "Maxime");
+		assertEquals((file.length + CHUNK - 1) / CHUNK, status.getMissing().size());
+		return status.getSessionId();
+	}
+
+	private List<Path> partFiles() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(f -> f.getFileName().toString().endsWith(".part")).toList();
+		}
+	}
+
+	private static byte[] file(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] chunk(byte[] file, int index) {
+		return Arrays.copyOfRange(file, index * CHUNK, Math.min(file.length, (index + 1) * CHUNK));
+	}
+
+	private static ByteArrayInputStream body(byte[] bytes) {
+		return new ByteArrayInputStream(bytes);
+	}
+
+	private static String sha256(byte[] bytes) throws Exception {
+		return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+	}
+}
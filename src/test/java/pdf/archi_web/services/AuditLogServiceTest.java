@@ -0,0 +1,122 @@
+package pdf.archi_web.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogServiceTest {
+
+	private static final Pattern DROPPED = Pattern.compile("action=AUDIT \\| status=DROPPED .*evenements=(\\d+)$");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void rotatesBySizeWithoutLosingEvents() throws Exception {
+		HistoryStore history = history();
+		AuditLogService audit = new AuditLogService(dir.resolve("logs").toString(), 1 << 20, 65536, 1, "batch", 1000, history);
+		// ~100 octets par ligne : plus de 3 Mo pour un plafond de 1 Mo
+		int events = submit(audit, 4, 8_000);
+		audit.close();
+		history.close();
+
+		List<Path> files = logFiles();
+		assertTrue(files.size() >= 3, "fichiers : " + files);
+		for (Path f : files) {
+			assertTrue(Files.size(f) <= 1024 * 1024, f + " dépasse audit.max-file-mb");
+		}
+		assertEquals(0, audit.droppedEvents());
+		assertEquals(events, countEvents(files)[0]);
+	}
+
+	@Test
+	void writtenPlusDroppedEqualsSubmitted() throws Exception {
+		HistoryStore history = history();
+		// file minuscule : le thread écrivain (journal + historique Lucene) ne suit pas
+		AuditLogService audit = new AuditLogService(dir.resolve("logs").toString(), 16, 4096, 50, "never", 1000, history);
+		int events = submit(audit, 4, 5_000);
+		audit.close();
+		history.close();
+
+		long[] counts = countEvents(logFiles());
+		assertTrue(audit.droppedEvents() > 0, "aucun événement perdu : la file n'a pas saturé");
+		assertEquals(events, counts[0] + audit.droppedEvents());
+		// chaque perte est signalée dans le journal
+		assertEquals(audit.droppedEvents(), counts[1]);
+	}
+
+	@Test
+	void archivesYesterdaysFileOnFirstWrite() throws Exception {
+		Path logs = Files.createDirectories(dir.resolve("logs"));
+		Path current = logs.resolve("audit.log");
+		String old = "2024-01-01 10:00:00+01:00 | user=Maxime | action=SEARCH | status=OK | query=\"guerre\" | occurrences=3";
+		Files.writeString(current, old + System.lineSeparator());
+		LocalDate yesterday = LocalDate.now(ZoneId.of("Europe/Paris")).minusDays(1);
+		Files.setLastModifiedTime(current, FileTime.from(yesterday.atTime(12, 0).atZone(ZoneId.of("Europe/Paris")).toInstant()));
+
+		HistoryStore history = history();
+		AuditLogService audit = new AuditLogService(logs.toString(), 1024, 65536, 50, "interval", 10, history);
+		audit.logSearchOk("Maxime", "nadal", 613, 12L);
+		audit.close();
+		history.close();
+
+		Path archive = logs.resolve("audit-" + yesterday + ".log");
+		assertEquals(List.of(old), Files.readAllLines(archive));
+		List<String> today = Files.readAllLines(current);
+		assertEquals(1, today.size());
+		assertTrue(today.get(0).endsWith("| query=\"nadal\" | occurrences=613 | duree=12ms"), today.get(0));
+	}
+
+	private HistoryStore history() throws IOException {
+		return new HistoryStore(dir.resolve("history").toString(), 5000, false, dir.resolve("recherches.log").toString(), dir.resolve("logs").toString());
+	}
+
+	private static int submit(AuditLogService audit, int threads, int perThread) throws InterruptedException {
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int id = t;
+			producers.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < perThread; i++) {
+					if (i % 2 == 0) audit.logSearchOk("user-" + id, "requête numéro " + i, i, (long) i % 100);
+					else audit.logUploadOk("user-" + id, "document-" + i + ".pdf", 1024L * i, "/pdf/document-" + i + ".pdf");
+				}
+			}));
+		}
+		for (Thread t : producers) t.join();
+		return threads * perThread;
+	}
+
+	private List<Path> logFiles() throws IOException {
+		try (Stream<Path> files = Files.list(dir.resolve("logs"))) {
+			return files.filter(f -> f.getFileName().toString().startsWith("audit")).sorted().toList();
+		}
+	}
+
+	/** Événements écrits et pertes signalées, sur tous les fichiers (courant et archives). */
+	private static long[] countEvents(List<Path> files) throws IOException {
+		long events = 0, dropped = 0;
+		for (Path f : files) {
+			for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) {
+				Matcher m = DROPPED.matcher(line);
+				if (m.find()) dropped += Long.parseLong(m.group(1));
+				else events++;
+			}
+		}
+		return new long[]{events, dropped};
+	}
+}
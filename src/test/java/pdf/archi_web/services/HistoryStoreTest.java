@@ -0,0 +1,188 @@
+package pdf.archi_web.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pdf.archi_web.DTO.HistoryEntry;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryStoreTest {
+
+	private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+	private static final List<String> AUDIT = List.of(
+			"2024-01-15 10:00:00+01:00 | user=Maxime | action=SEARCH | status=OK | query=\"guerre\" | occurrences=3 | duree=12ms",
+			"2024-03-02 09:30:00+01:00 | user=Maxime | action=UPLOAD | status=OK | fichier=climat.pdf | taille=1200 octets | url=/pdf/climat.pdf",
+			"2024-03-20 18:45:10+01:00 | user=Maxime | action=SEARCH | status=ERROR | query=\"a AND\" | erreur=requête invalide");
+	private static final List<String> SEARCHES = List.of(
+			"2023-09-09T13:32:19.272183800 | 'tonMot' -> []",
+			"2023-09-09T13:33:17.595064200 | 'guerre' -> [152, 58]");
+
+	@TempDir
+	Path dir;
+
+	// lignes réelles de logs/audit.log
+	@Test
+	void parsesAuditLines() {
+		HistoryEntry search = HistoryStore.parseAuditLine(
+				"2026-10-18 11:08:43+02:00 | user=Maxime | action=SEARCH | status=OK | query=\"argentine\" | occurrences=5 | duree=29ms");
+		assertEquals(OffsetDateTime.parse("2026-10-18T11:08:43+02:00").toInstant().toEpochMilli(), search.getTimestamp());
+		assertEquals("Maxime", search.getUser());
+		assertEquals("SEARCH", search.getAction());
+		assertEquals("OK", search.getStatus());
+		assertEquals("argentine", search.getQuery());
+		assertEquals(5, search.getOccurrences());
+		assertEquals(29L, search.getLatencyMs());
+		assertNull(search.getFilename());
+
+		HistoryEntry upload = HistoryStore.parseAuditLine(
+				"2026-10-18 12:06:17+02:00 | user=Maxime | action=UPLOAD | status=OK | fichier=Copie_climat.pdf | taille=3150818 octets | url=/pdf/Copie_climat.pdf");
+		assertEquals("UPLOAD", upload.getAction());
+		assertEquals("Copie_climat.pdf", upload.getFilename());
+		assertEquals(3150818L, upload.getSizeBytes());
+		assertEquals("/pdf/Copie_climat.pdf", upload.getUrl());
+
+		HistoryEntry error = HistoryStore.parseAuditLine(
+				"2026-10-18 12:05:54+02:00 | user=Maxime | action=UPLOAD | status=ERROR | fichier=1-Rafael_Nadal.pdf | erreur=nœud réplique : index en lecture seule, envoyer les PDF au primaire");
+		assertEquals("ERROR", error.getStatus());
+		assertEquals("1-Rafael_Nadal.pdf", error.getFilename());
+		assertEquals("nœud réplique : index en lecture seule, envoyer les PDF au primaire", error.getError());
+
+		// une requête qui contient le séparateur des champs
+		HistoryEntry piped = HistoryStore.parseAuditLine(
+				"2026-10-18 11:09:31+02:00 | user=Maxime | action=SEARCH | status=CANCELLED | query=\"a | b\" | occurrences=0");
+		assertEquals("a | b", piped.getQuery());
+		assertEquals("CANCELLED", piped.getStatus());
+		assertEquals(0, piped.getOccurrences());
+
+		assertNull(HistoryStore.parseAuditLine("pas une ligne d'audit"));
+	}
+
+	// enregistrements réels de recherches.log, des deux époques
+	@Test
+	void parsesLegacySearches() {
+		HistoryEntry empty = HistoryStore.parseLegacySearch("2025-09-09T13:32:19.272183800 | 'tonMot' -> []");
+		assertEquals(LocalDateTime.parse("2025-09-09T13:32:19.272").atZone(PARIS).toInstant().toEpochMilli(), empty.getTimestamp());
+		assertEquals("tonMot", empty.getQuery());
+		assertEquals(0, empty.getOccurrences());
+		assertEquals("SEARCH", empty.getAction());
+		assertEquals("OK", empty.getStatus());
+
+		// première époque : numéros de page seulement
+		HistoryEntry pages = HistoryStore.parseLegacySearch(
+				"2025-09-09T13:33:17.595064200 | 'guerre' -> [152, 152, 58, 72, 58, 72, 54, 54, 51, 51]");
+		assertEquals("guerre", pages.getQuery());
+		assertEquals(10, pages.getOccurrences());
+
+		// époque suivante : un résultat par ligne trouvée, texte de la ligne sur plusieurs lignes du journal
+		HistoryEntry hits = HistoryStore.parseLegacySearch(
+				"2025-09-09T14:43:50.855929900 | 'poule' -> [1-Roger Federer.pdf : page 25 | paragraphe 1 | ligne 6 -> "
+						+ "en poule A : avec Novak Djokovic, Tomáš Berdych et Kei \n | url: /pdf/1-Roger Federer.pdf#page=25]");
+		assertEquals("poule", hits.getQuery());
+		assertEquals(1, hits.getOccurrences());
+
+		HistoryEntry several = HistoryStore.parseLegacySearch(
+				"2025-09-09T13:41:50.859244900 | 'guerre' -> [1-Histoire du communisme.pdf : page 152, "
+						+ "1-Histoire du communisme.pdf : page 58, 1-Guerre de Canudos.pdf : page 21]");
+		assertEquals(3, several.getOccurrences());
+
+		assertNull(HistoryStore.parseLegacySearch("2025-09-09T13:32:19 tronqué"));
+	}
+
+	// une écriture d'audit a créé une partition avant l'import : l'ancien code ne l'aurait jamais lancé
+	@Test
+	void importsLegacyLogsEvenWhenPartitionsAlreadyExist() throws Exception {
+		writeLegacyLogs();
+		HistoryStore earlier = store(false);
+		earlier.add(HistoryStore.parseAuditLine(AUDIT.get(1))); // aussi dans audit.log, comme tout événement d'audit
+		earlier.close();
+
+		HistoryStore history = store(true);
+		try {
+			history.awaitImport();
+			assertEquals(AUDIT.size() + SEARCHES.size(), count(history));
+			assertTrue(Files.exists(dir.resolve("history").resolve(HistoryStore.IMPORT_DONE)));
+		} finally {
+			history.close();
+		}
+	}
+
+	@Test
+	void resumesAnInterruptedImportWithoutDuplicates() throws Exception {
+		writeLegacyLogs();
+		// import interrompu : date limite posée, une partie des anciens événements déjà indexée, puis un événement d'audit
+		long cutoff = OffsetDateTime.parse("2026-01-01T00:00:00+01:00").toInstant().toEpochMilli();
+		String live = "2026-02-01 08:00:00+01:00 | user=Maxime | action=SEARCH | status=OK | query=\"nadal\" | occurrences=4 | duree=9ms";
+		Files.writeString(dir.resolve("logs/audit.log"), live + "\n", StandardOpenOption.APPEND);
+		Files.createDirectories(dir.resolve("history"));
+		Files.writeString(dir.resolve("history").resolve(HistoryStore.IMPORT_CUTOFF), Long.toString(cutoff));
+		HistoryStore interrupted = store(false);
+		interrupted.add(HistoryStore.parseAuditLine(AUDIT.get(0)));
+		interrupted.add(HistoryStore.parseLegacySearch(SEARCHES.get(1)));
+		interrupted.add(HistoryStore.parseAuditLine(live));
+		interrupted.close();
+
+		HistoryStore history = store(true);
+		try {
+			history.awaitImport();
+			// chaque ancien événement une fois, l'événement d'audit postérieur à la date limite conservé et non réimporté
+			assertEquals(AUDIT.size() + SEARCHES.size() + 1, count(history));
+			assertEquals(1, history.recent(0, Long.MAX_VALUE, null, "nadal", null, 10).size());
+		} finally {
+			history.close();
+		}
+
+		// import terminé : plus rien n'est repris des journaux
+		Files.writeString(dir.resolve("logs/audit.log"), AUDIT.get(0) + "\n", StandardOpenOption.APPEND);
+		history = store(true);
+		try {
+			history.awaitImport();
+			assertEquals(AUDIT.size() + SEARCHES.size() + 1, count(history));
+		} finally {
+			history.close();
+		}
+	}
+
+	@Test
+	void statsRejectsTooManyBuckets() throws Exception {
+		HistoryStore history = new HistoryStore(dir.toString(), 5000, false, dir.resolve("recherches.log").toString(), dir.resolve("logs").toString());
+		try {
+			long hour = 3_600_000L;
+			long from = OffsetDateTime.parse("2026-01-01T00:00:00+01:00").toInstant().toEpochMilli();
+			history.add(new HistoryEntry(from + 3 * hour, "Maxime", "SEARCH", "OK", "nadal", null, null, null, 4, 10L, null));
+			history.afterBatch();
+
+			List<HistoryStore.Bucket> buckets = history.stats(from, from + 24 * hour, hour, null, null);
+			assertEquals(24, buckets.size());
+			assertEquals(1, buckets.get(3).searches());
+
+			long tooLong = from + (HistoryStore.MAX_BUCKETS + 1) * hour;
+			assertThrows(IllegalArgumentException.class, () -> history.stats(from, tooLong, hour, null, null));
+		} finally {
+			history.close();
+		}
+	}
+
+	private HistoryStore store(boolean importLegacy) throws Exception {
+		return new HistoryStore(dir.resolve("history").toString(), 5000, importLegacy,
+				dir.resolve("recherches.log").toString(), dir.resolve("logs").toString());
+	}
+
+	private void writeLegacyLogs() throws Exception {
+		Files.createDirectories(dir.resolve("logs"));
+		Files.write(dir.resolve("logs/audit.log"), AUDIT);
+		Files.write(dir.resolve("recherches.log"), SEARCHES);
+	}
+
+	private static int count(HistoryStore history) throws Exception {
+		return history.recent(0, Long.MAX_VALUE, null, null, null, 1000).size();
+	}
+}
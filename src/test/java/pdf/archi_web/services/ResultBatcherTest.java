@@ -0,0 +1,85 @@
+package pdf.archi_web.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import pdf.archi_web.DTO.SearchResult;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultBatcherTest {
+
+	private static final long FLUSH_MS = 50;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+	private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	@AfterEach
+	void tearDown() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	void pendingBatchLeavesAtItsDeadlineWithoutANextResult() throws Exception {
+		ResultBatcher batcher = batcher();
+		batcher.onResult(result(1)); // le premier part seul, tout de suite
+		batcher.onResult(result(2));
+		batcher.onResult(result(3));
+		assertEquals(1, sent.size());
+
+		// la recherche lit la page suivante : aucun résultat de plus, le lot part quand même
+		long start = System.nanoTime();
+		while (sent.size() < 2 && System.nanoTime() - start < 5_000_000_000L) Thread.sleep(5);
+		assertEquals(2, sent.size());
+		assertEquals(2, results(sent.get(1)).size());
+
+		batcher.flush();
+		batcher.close();
+		assertEquals(2, batcher.frames());
+	}
+
+	@Test
+	void closeCancelsThePendingDeadline() throws Exception {
+		ResultBatcher batcher = batcher();
+		batcher.onResult(result(1));
+		batcher.onResult(result(2));
+		// demande annulée : le lot en attente ne doit pas partir après coup
+		batcher.close();
+		Thread.sleep(4 * FLUSH_MS);
+		assertEquals(1, sent.size());
+		assertEquals(1, batcher.frames());
+	}
+
+	@Test
+	void fullBatchLeavesAtOnce() throws Exception {
+		ResultBatcher batcher = batcher();
+		for (int i = 0; i < 5; i++) batcher.onResult(result(i));
+		// premier résultat seul, puis un lot plein de 4
+		assertEquals(2, sent.size());
+		assertEquals(4, results(sent.get(1)).size());
+		batcher.close();
+	}
+
+	private ResultBatcher batcher() {
+		return new ResultBatcher(template, mapper, "/queue/results-test", ResultBatcher.Format.BATCH, 4, FLUSH_MS,
+				new HashMap<>(), timer);
+	}
+
+	private List<?> results(Message<?> message) throws Exception {
+		return mapper.readValue((byte[]) message.getPayload(), List.class);
+	}
+
+	private static SearchResult result(int i) {
+		return new SearchResult("doc-" + i + ".pdf", i, 1, 1, "ligne " + i);
+	}
+}